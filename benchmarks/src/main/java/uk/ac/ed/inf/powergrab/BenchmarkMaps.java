@@ -0,0 +1,128 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * <h1>
+ *     Maps used by the benchmarks.
+ * </h1>
+ * <p>
+ *     A map is either one of the GeoJSON maps bundled with the tests, named
+ *     by its date key (for example <code>2019-09-17</code>), or a synthetic
+ *     map named <code>synthetic-N</code> with N stations spread uniformly
+ *     over the play area. Synthetic maps are generated from a fixed seed,
+ *     so every run of a benchmark uses the same map.
+ * </p>
+ */
+final class BenchmarkMaps {
+    static final Position START = new Position(55.944425, -3.188396);
+    private static final String SYNTHETIC = "synthetic-";
+
+    private BenchmarkMaps() {
+    }
+
+    /**
+     * <p>
+     *     Returns the GeoJSON of a map.
+     * </p>
+     * @param name date key of a bundled map or synthetic-N
+     * @return bytes of the GeoJSON FeatureCollection
+     */
+    static byte[] geoJson(String name) throws IOException {
+        if(name.startsWith(SYNTHETIC)) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+            GeoJsonMapWriter.write(synthetic(Integer.parseInt(name.substring(SYNTHETIC.length()))), null, out);
+            return bytes.toByteArray();
+        }
+        try(InputStream in = BenchmarkMaps.class.getResourceAsStream("/maps/" + name + ".geojson")) {
+            if(in == null) {
+                throw new IOException("There is no bundled map " + name);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for(int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    static StationTable stations(String name) throws IOException {
+        if(name.startsWith(SYNTHETIC)) {
+            return synthetic(Integer.parseInt(name.substring(SYNTHETIC.length())));
+        }
+        return GeoJsonMapReader.read(new ByteArrayInputStream(geoJson(name)));
+    }
+
+    /**
+     * <p>
+     *     Generates a map with a given number of stations. As in the real
+     *     maps, about half of the stations are lighthouses with up to 125
+     *     coins and power and the rest are danger stations with as much
+     *     negative coins and power.
+     * </p>
+     */
+    static StationTable synthetic(int count) {
+        Random random = new Random(count);
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int i = 0; i < count; i++) {
+            double lat = Position.MIN_LATITUDE + random.nextDouble() * (Position.MAX_LATITUDE - Position.MIN_LATITUDE);
+            double lon = Position.MIN_LONGITUDE + random.nextDouble() * (Position.MAX_LONGITUDE - Position.MIN_LONGITUDE);
+            boolean lighthouse = random.nextBoolean();
+            double sign = lighthouse ? 1 : -1;
+            builder.add(String.format("synthetic-%06d", i), lat, lon, sign * random.nextDouble() * 125,
+                    sign * random.nextDouble() * 125, lighthouse ? StationTable.LIGHTHOUSE : StationTable.DANGER,
+                    lighthouse ? "#00ff00" : "#ff0000");
+        }
+        return builder.build();
+    }
+
+    /**
+     * <p>
+     *     Points of the Lattice starting at START at which the queries are
+     *     measured: a random walk that stays in the play area, the same for
+     *     every run.
+     * </p>
+     */
+    static long[] queryPoints(int count) {
+        Random random = new Random(5678);
+        Lattice lattice = new Lattice(START);
+        Direction[] directions = Direction.values();
+        long[] points = new long[count];
+        long point = Lattice.ORIGIN;
+        for(int i = 0; i < count; i++) {
+            long next;
+            do {
+                next = Lattice.next(point, directions[random.nextInt(directions.length)]);
+            } while(!lattice.inPlayArea(next));
+            point = next;
+            points[i] = point;
+        }
+        return points;
+    }
+
+    /**
+     * Writer which drops everything, used in place of the .txt files of the games.
+     */
+    static final class NullWriter extends Writer {
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
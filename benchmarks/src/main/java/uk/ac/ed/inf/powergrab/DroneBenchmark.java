@@ -0,0 +1,90 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ *     Decisions the drones make on every move or once per game: the choice
+ *     of the stateless drone, the safety check and the game plan of the
+ *     stateful drone. Queries are made at a fixed sequence of points
+ *     spread over the play area.
+ * </p>
+ * <p>
+ *     The stateless drone empties the stations it chooses, so a new game is
+ *     started on the map before every iteration.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DroneBenchmark {
+    private static final int POSITIONS = 1024;
+
+    @Param({"2019-09-17", "synthetic-50", "synthetic-500", "synthetic-5000"})
+    public String map;
+
+    private GameStateMap loadedMap;
+    private long[] points;
+    private int next;
+    private StatelessMapController controller;
+    private StatefulDrone drone;
+
+    @Setup(Level.Trial)
+    public void loadMap() throws IOException {
+        loadedMap = new GameStateMap(BenchmarkMaps.stations(map), null);
+        points = BenchmarkMaps.queryPoints(POSITIONS);
+    }
+
+    @Setup(Level.Iteration)
+    public void startGame() {
+        GameStateMap gameStateMap = new GameStateMap(loadedMap, new Random(5678));
+        controller = new StatelessMapController(gameStateMap, BenchmarkMaps.START);
+        drone = new StatefulDrone(BenchmarkMaps.START, gameStateMap, new PrintWriter(new BenchmarkMaps.NullWriter()), null);
+    }
+
+    private long nextPoint() {
+        next = (next + 1) & (POSITIONS - 1);
+        return points[next];
+    }
+
+    @Benchmark
+    public Direction statelessDirectionToMove() {
+        controller.point = nextPoint();
+        return controller.getDirectionToMove();
+    }
+
+    @Benchmark
+    public void statefulSafetyOfDirections(Blackhole blackhole) {
+        drone.point = nextPoint();
+        for(Direction d : Direction.values()) {
+            blackhole.consume(drone.checkSafetyOfDirection(d));
+        }
+    }
+
+    @Benchmark
+    public int statefulGamePlan() {
+        drone.planToFollow.clear();
+        drone.findGamePlan();
+        return drone.planToFollow.size();
+    }
+}
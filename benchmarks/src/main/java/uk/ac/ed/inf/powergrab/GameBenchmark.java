@@ -0,0 +1,69 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ *     A whole game of 250 moves on a map loaded beforehand, played the same
+ *     way as Game.play but without writing the files.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+    @State(Scope.Thread)
+    public static class Maps {
+        @Param({"2019-09-17", "synthetic-50", "synthetic-500", "synthetic-5000"})
+        public String map;
+
+        GameStateMap loadedMap;
+
+        @Setup
+        public void loadMap() throws IOException {
+            loadedMap = new GameStateMap(BenchmarkMaps.stations(map), null);
+        }
+    }
+
+    @Benchmark
+    public double statelessGame(Maps maps) {
+        GameStateMap gameStateMap = new GameStateMap(maps.loadedMap, new Random(5678));
+        StatelessMapController mapC = new StatelessMapController(gameStateMap, BenchmarkMaps.START);
+        StatelessDrone drone = new StatelessDrone(BenchmarkMaps.START, mapC);
+        while(drone.power > 1.25 && drone.movesCount < 250) {
+            drone.move();
+        }
+        mapC.addPathToMap();
+        return drone.coins;
+    }
+
+    @Benchmark
+    public double statefulGame(Maps maps) {
+        GameStateMap gameStateMap = new GameStateMap(maps.loadedMap, new Random(5678));
+        StatefulDrone drone = new StatefulDrone(BenchmarkMaps.START, gameStateMap,
+                new PrintWriter(new BenchmarkMaps.NullWriter()), null);
+        while(!drone.isFinished()) {
+            drone.move();
+        }
+        drone.addPathToMap();
+        return drone.coins;
+    }
+}
@@ -0,0 +1,81 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>
+ *     Loading a map into a GameStateMap: reading the GeoJSON, reading the
+ *     precompiled .pgmap file, building the StationGrid, the StationMatrix
+ *     and the HazardRaster.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapLoadBenchmark {
+
+    @Param({"2019-09-17", "synthetic-50", "synthetic-500", "synthetic-5000"})
+    public String map;
+
+    private byte[] geoJson;
+    private StationTable stations;
+    private Path pgMap;
+
+    @Setup
+    public void setUp() throws IOException {
+        geoJson = BenchmarkMaps.geoJson(map);
+        stations = GeoJsonMapReader.read(new ByteArrayInputStream(geoJson));
+        pgMap = Files.createTempFile("powergrab-benchmark", ".pgmap");
+        PgMapFile.write(stations, MapCache.sha256(geoJson), pgMap);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(pgMap);
+    }
+
+    @Benchmark
+    public StationTable readGeoJson() throws IOException {
+        return GeoJsonMapReader.read(new ByteArrayInputStream(geoJson));
+    }
+
+    @Benchmark
+    public StationTable readPgMap() throws IOException {
+        return PgMapFile.read(pgMap);
+    }
+
+    @Benchmark
+    public StationGrid buildGrid() {
+        return new StationGrid(stations, GameStateMap.CHARGING_RANGE);
+    }
+
+    @Benchmark
+    public StationMatrix buildStationMatrix() {
+        return new StationMatrix(stations);
+    }
+
+    @Benchmark
+    public HazardRaster buildHazardRaster() {
+        return new HazardRaster(stations);
+    }
+}
@@ -1,35 +1,223 @@
 package uk.ac.ed.inf.powergrab;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Map;
 
 public class App {
 
     public static void main(String[] args) throws IOException {
+        if(args.length > 0 && args[0].equals("prefetch")){
+            prefetch(args);
+            return;
+        }
+
+        if(args.length > 0 && args[0].equals("batch")){
+            batch(args);
+            return;
+        }
+
+        if(args.length > 0 && args[0].equals("sweep")){
+            sweep(args);
+            return;
+        }
+
+        String error = checkArguments(args);
+        if(error != null){
+            System.out.println(error);
+            System.exit(1);
+        }
+
+        try(Game game = new Game(args)) {
+            game.play();
+        }
+    }
+
+    /**
+     * <p>
+     *     Checks the arguments of a single game.
+     * </p>
+     * @param args day, month, year, initial latitude, initial longitude, seed and type of drone
+     * @return message which explains what is wrong with the arguments, or null if they are correct
+     */
+    static String checkArguments(String[] args) {
         if(args.length != 7){
             String params = "<day> <month> <year> <initialLatitude> <initialLongitude> <seed> <droneType>";
+            return "Incorrect number of arguments. \n The only accepted arguments are: \n " + params + "\n divided by space.";
+        }
+
+        try {
+            if(Integer.parseInt(args[0]) > 31 || Integer.parseInt(args[1]) > 12 || Integer.parseInt(args[2]) != 2019
+                || Integer.parseInt(args[0]) < 1 || Integer.parseInt(args[1]) < 1){
+                return "Incorrect date, please note that first three arguments represent day, month and year";
+            }
+        } catch (NumberFormatException e) {
+            return "Incorrect date, please note that first three arguments represent day, month and year";
+        }
+
+        if((!args[6].equals("stateless"))&& !(args[6].equals("stateful"))){
+            return "Incorrect type of drone, only stateful and stateless are supported.";
+        }
+
+        Position initialPosition;
+        try {
+            initialPosition = new Position(Double.parseDouble(args[3]),Double.parseDouble(args[4]));
+            Integer.parseInt(args[5]);
+        } catch (NumberFormatException e) {
+            return "Incorrect initial position or seed: " + e.getMessage();
+        }
+        if(!initialPosition.inPlayArea()){
+            return "Initial position given is not in a play area, play area corresponds to: \n"
+                    + "Latitude between 55.942617 and 55.946233.\n"
+                    + "Longitude between −3.184319 and −3.192473.";
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     *     Downloads the maps of all days between two dates into the map cache.
+     *     Arguments are: prefetch fromDay fromMonth fromYear toDay toMonth toYear [maxInFlight]
+     * </p>
+     * @param args command-line arguments, starting with "prefetch"
+     */
+    private static void prefetch(String[] args) {
+        if(args.length != 7 && args.length != 8){
+            String params = "prefetch <fromDay> <fromMonth> <fromYear> <toDay> <toMonth> <toYear> [maxInFlight]";
             System.out.println("Incorrect number of arguments. \n The only accepted arguments are: \n " + params + "\n divided by space.");
             System.exit(1);
         }
-
-        if(Integer.parseInt(args[0]) > 31 || Integer.parseInt(args[1]) > 12 || Integer.parseInt(args[2]) != 2019
-            || Integer.parseInt(args[0]) < 1 || Integer.parseInt(args[1]) < 1){
-            System.out.println("Incorrect date, please note that first three arguments represent day, month and year");
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = LocalDate.of(Integer.parseInt(args[3]), Integer.parseInt(args[2]), Integer.parseInt(args[1]));
+            to = LocalDate.of(Integer.parseInt(args[6]), Integer.parseInt(args[5]), Integer.parseInt(args[4]));
+        } catch (DateTimeException | NumberFormatException e) {
+            System.out.println("Incorrect date: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        int maxInFlight = 8;
+        try {
+            if(args.length == 8) {
+                maxInFlight = Integer.parseInt(args[7]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Incorrect maxInFlight: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if(maxInFlight < 1) {
+            System.out.println("Number of maps in flight must be positive.");
             System.exit(1);
         }
 
-        if((!args[6].equals("stateless"))&& !(args[6].equals("stateful"))){
-            System.out.println("Incorrect type of drone, only stateful and stateless are supported.");
+        try(MapPrefetcher prefetcher = new MapPrefetcher(MapCache.fromSystemProperties(), maxInFlight, 4, 500)) {
+            MapPrefetcher.Report report = prefetcher.prefetch(from, to);
+            for(Map.Entry<String, Throwable> failure : report.failed.entrySet()) {
+                System.out.println("Failed to fetch " + failure.getKey() + ": " + failure.getValue().getMessage());
+            }
+            System.out.println("Cached " + report.cached.size() + " maps, " + report.failed.size() + " failed.");
+            if(!report.failed.isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Plays all games of a manifest in this JVM.
+     *     Arguments are: batch manifest [outputDirectory] [threads]
+     * </p>
+     * @param args command-line arguments, starting with "batch"
+     */
+    private static void batch(String[] args) throws IOException {
+        if(args.length < 2 || args.length > 4){
+            String params = "batch <manifest> [outputDirectory] [threads]";
+            System.out.println("Incorrect number of arguments. \n The only accepted arguments are: \n " + params + "\n divided by space.");
+            System.exit(1);
+        }
+        String outputDirectory = args.length > 2 ? args[2] : "batch";
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if(args.length > 3) {
+                threads = Integer.parseInt(args[3]);
+            }
+        } catch (NumberFormatException e) {
+            System.out.println("Incorrect threads: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if(threads < 1) {
+            System.out.println("Number of threads must be positive.");
             System.exit(1);
         }
 
-        Position initialPosition = new Position(Double.parseDouble(args[3]),Double.parseDouble(args[4]));
-        if(!initialPosition.inPlayArea()){
-            System.out.println("Initial position given is not in a play area, play area corresponds to: ");
-            System.out.println("Latitude between 55.942617 and 55.946233.");
-            System.out.println("Longitude between −3.184319 and −3.192473.");
+        try(BatchRunner runner = new BatchRunner(MapCache.fromSystemProperties(), Paths.get(outputDirectory), threads)) {
+            BatchRunner.Report report = runner.run(BatchRunner.readManifest(Paths.get(args[1])));
+            for(Map.Entry<String, Throwable> failure : report.failed.entrySet()) {
+                System.out.println("Game " + failure.getKey() + " failed: " + failure.getValue().getMessage());
+            }
+            System.out.println("Played " + report.finished.size() + " games, " + report.failed.size() + " failed.");
+            if(!report.failed.isEmpty()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Plays the stateless drone on one map with a range of seeds and prints
+     *     the statistics of its coins and power.
+     *     Arguments are: sweep day month year initialLatitude initialLongitude firstSeed count [threads]
+     * </p>
+     * @param args command-line arguments, starting with "sweep"
+     */
+    private static void sweep(String[] args) throws IOException {
+        String params = "sweep <day> <month> <year> <initialLatitude> <initialLongitude> <firstSeed> <count> [threads]";
+        if(args.length != 8 && args.length != 9){
+            System.out.println("Incorrect number of arguments. \n The only accepted arguments are: \n " + params + "\n divided by space.");
+            System.exit(1);
+        }
+        String[] gameArgs = {args[1], args[2], args[3], args[4], args[5], "0", "stateless"};
+        String error = checkArguments(gameArgs);
+        long firstSeed = 0;
+        int count = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            firstSeed = Long.parseLong(args[6]);
+            count = Integer.parseInt(args[7]);
+            if(args.length == 9) {
+                threads = Integer.parseInt(args[8]);
+            }
+        } catch (NumberFormatException e) {
+            error = "Incorrect seed, count or threads: " + e.getMessage();
+        }
+        if(error == null && count < 1){
+            error = "Number of games must be positive.";
+        }
+        if(error != null){
+            System.out.println(error);
             System.exit(1);
         }
 
-        new Game(args).play();
+        String[] date = {args[1], args[2], args[3]};
+        Position initialPosition = new Position(Double.parseDouble(args[4]), Double.parseDouble(args[5]));
+        GameStateMap map = new GameStateMap(date, null);
+        try(SeedSweep sweep = new SeedSweep(map, initialPosition, threads)) {
+            SeedSweep.Result result = sweep.run(firstSeed, count);
+            System.out.println("Games: " + result.count() + ", seeds " + firstSeed + " to " + (firstSeed + count - 1));
+            printDistribution("Coins", result.coins);
+            printDistribution("Power", result.power);
+            System.out.println("Best seed: " + result.bestSeed);
+        }
+    }
+
+    private static void printDistribution(String name, SeedSweep.Distribution distribution) {
+        System.out.println(String.format("%s: mean %f, min %f, p5 %f, p25 %f, p50 %f, p75 %f, p95 %f, max %f", name,
+                distribution.mean, distribution.min(), distribution.percentile(5), distribution.percentile(25),
+                distribution.percentile(50), distribution.percentile(75), distribution.percentile(95), distribution.max()));
     }
 }
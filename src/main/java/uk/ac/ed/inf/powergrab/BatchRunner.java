@@ -0,0 +1,171 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <h1>
+ *     Runs many games in one JVM.
+ * </h1>
+ * <p>
+ *     Games are described by a manifest, a text file with one game per line
+ *     written the same way as the command-line arguments of a single game:
+ *     <code>day month year initialLatitude initialLongitude seed droneType</code>.
+ *     Empty lines and lines starting with # are skipped.
+ * </p>
+ * <p>
+ *     Games run on a fixed pool of threads. The map of each date is loaded
+ *     only once, by the first game that needs it, and every game on that date
+ *     plays on its own copy of the coins and power of the stations. Each game
+ *     writes its files to its own directory, named after its number in the
+ *     manifest (<code>run-0001</code>, ...), with the same file names and
+ *     the same content as a single game with the same arguments.
+ * </p>
+ * <p>
+ *     The runner implements AutoCloseable interface, which is used to
+ *     stop its threads.
+ * </p>
+ */
+public class BatchRunner implements AutoCloseable {
+    private final MapCache mapCache;
+    private final Path outputDirectory;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, CompletableFuture<GameStateMap>> loadedMaps = new ConcurrentHashMap<>();
+
+    /**
+     * @param mapCache cache from which the maps are loaded
+     * @param outputDirectory directory where the directories of the games are created
+     * @param threads number of games that are played at the same time
+     */
+    public BatchRunner(MapCache mapCache, Path outputDirectory, int threads) {
+        this.mapCache = mapCache;
+        this.outputDirectory = outputDirectory;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "batch-game");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <p>
+     *     Reads the games from a manifest and checks their arguments.
+     * </p>
+     * @param manifest text file with the arguments of one game per line
+     * @return arguments of the games, in the order of the manifest
+     * @throws IOException if the manifest can't be read or some line has incorrect arguments
+     */
+    static List<String[]> readManifest(Path manifest) throws IOException {
+        List<String[]> runs = new ArrayList<>();
+        int lineNumber = 0;
+        for(String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] args = line.split("\\s+");
+            String error = App.checkArguments(args);
+            if(error != null) {
+                throw new IOException(manifest + " line " + lineNumber + ": " + error);
+            }
+            runs.add(args);
+        }
+        return runs;
+    }
+
+    /**
+     * <p>
+     *     Plays all the games and waits until every one of them has either
+     *     finished or failed.
+     * </p>
+     * @param runs arguments of the games, as returned by readManifest
+     * @return Report with the output directories and the failures, by the directory name of a game
+     */
+    public Report run(List<String[]> runs) throws IOException {
+        Files.createDirectories(outputDirectory);
+        List<String> names = new ArrayList<>();
+        List<CompletableFuture<Path>> games = new ArrayList<>();
+        for(int i = 0; i < runs.size(); i++) {
+            String[] args = runs.get(i);
+            String name = String.format("run-%04d", i + 1);
+            names.add(name);
+            games.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return play(args, outputDirectory.resolve(name));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor));
+        }
+        Report report = new Report();
+        for(int i = 0; i < names.size(); i++) {
+            try {
+                report.finished.put(names.get(i), games.get(i).join());
+            } catch (CompletionException e) {
+                report.failed.put(names.get(i), e.getCause());
+            }
+        }
+        return report;
+    }
+
+    private Path play(String[] args, Path directory) throws IOException {
+        GameStateMap loadedMap = loadedMap(new String[]{args[0], args[1], args[2]});
+        Files.createDirectories(directory);
+        try(Game game = new Game(args, directory, mapCache, loadedMap, null)) {
+            game.play();
+        }
+        return directory;
+    }
+
+    /**
+     * <p>
+     *     Returns the map of a date, loading it if no game has loaded it yet.
+     *     Games that ask for a map which is being loaded wait for it.
+     * </p>
+     */
+    private GameStateMap loadedMap(String[] date) throws IOException {
+        String key = MapCache.key(date);
+        CompletableFuture<GameStateMap> created = new CompletableFuture<>();
+        CompletableFuture<GameStateMap> existing = loadedMaps.putIfAbsent(key, created);
+        if(existing == null) {
+            try {
+                created.complete(new GameStateMap(date, null, mapCache));
+            } catch (IOException | RuntimeException e) {
+                created.completeExceptionally(e);
+            }
+        }
+        try {
+            return (existing == null ? created : existing).join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Outcome of playing a batch of games.
+     */
+    public static class Report {
+        public final Map<String, Path> finished = new TreeMap<>();
+        public final Map<String, Throwable> failed = new TreeMap<>();
+    }
+}
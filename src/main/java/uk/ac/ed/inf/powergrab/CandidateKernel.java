@@ -0,0 +1,129 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Distances between the positions a drone can move to and the stations around it.
+ * </h1>
+ * <p>
+ *     The stations are copied into a block of plain arrays (latitude,
+ *     longitude, kind), and one pass over the block finds, for every
+ *     candidate position at once, how many stations are in the charging
+ *     range and which are the closest green and red ones in range. Distances
+ *     are compared squared, against the squared range, so there is no
+ *     <code>Math.hypot</code> or square root in the pass.
+ * </p>
+ * <p>
+ *     For each station the squared distances to all candidates are computed
+ *     first by a loop without branches over the candidate arrays, which the
+ *     JIT can turn into vector instructions, and the results are then
+ *     updated with selects rather than jumps. Stations are visited in the
+ *     order they were added, and a station only replaces the closest one if
+ *     it is strictly closer, so ties go to the station added first.
+ * </p>
+ * <p>
+ *     A kernel is reused by every move, so running it doesn't allocate.
+ * </p>
+ */
+final class CandidateKernel {
+    /** Lighthouse which can be charged from. */
+    static final byte GREEN = 0;
+    static final byte RED = 1;
+    /** Station which counts as in range but is never the closest green or red one. */
+    static final byte OTHER = 2;
+
+    final int candidates;
+    final double[] candidateLatitude;
+    final double[] candidateLongitude;
+
+    /** index of the closest green station in range of each candidate, or -1 */
+    final int[] nearestGreen;
+    final double[] nearestGreenSquared;
+    /** index of the closest red station in range of each candidate, or -1 */
+    final int[] nearestRed;
+    final double[] nearestRedSquared;
+    /** number of stations in range of each candidate */
+    final int[] inRange;
+
+    private final double[] stationLatitude;
+    private final double[] stationLongitude;
+    private final byte[] stationKind;
+    private final int[] stationIndex;
+    private int stationCount;
+    private final double[] distanceSquared;
+
+    /**
+     * @param candidates number of candidate positions
+     * @param maxStations most stations which are added between two clears
+     */
+    CandidateKernel(int candidates, int maxStations) {
+        this.candidates = candidates;
+        this.candidateLatitude = new double[candidates];
+        this.candidateLongitude = new double[candidates];
+        this.nearestGreen = new int[candidates];
+        this.nearestGreenSquared = new double[candidates];
+        this.nearestRed = new int[candidates];
+        this.nearestRedSquared = new double[candidates];
+        this.inRange = new int[candidates];
+        this.distanceSquared = new double[candidates];
+        this.stationLatitude = new double[maxStations];
+        this.stationLongitude = new double[maxStations];
+        this.stationKind = new byte[maxStations];
+        this.stationIndex = new int[maxStations];
+    }
+
+    void clearStations() {
+        stationCount = 0;
+    }
+
+    /**
+     * @param index index of the station, which is what the results refer to
+     * @param lat latitude of the station
+     * @param lon longitude of the station
+     * @param kind GREEN, RED or OTHER
+     */
+    void addStation(int index, double lat, double lon, byte kind) {
+        stationLatitude[stationCount] = lat;
+        stationLongitude[stationCount] = lon;
+        stationKind[stationCount] = kind;
+        stationIndex[stationCount] = index;
+        stationCount++;
+    }
+
+    /**
+     * <p>
+     *     Compares all candidates with all stations added since the last clear.
+     * </p>
+     * @param rangeSquared square of the charging range, a station is in range if its squared distance is at most this
+     */
+    void run(double rangeSquared) {
+        Arrays.fill(nearestGreen, -1);
+        Arrays.fill(nearestRed, -1);
+        Arrays.fill(nearestGreenSquared, Double.POSITIVE_INFINITY);
+        Arrays.fill(nearestRedSquared, Double.POSITIVE_INFINITY);
+        Arrays.fill(inRange, 0);
+        for(int j = 0; j < stationCount; j++) {
+            double lat = stationLatitude[j];
+            double lon = stationLongitude[j];
+            for(int c = 0; c < candidates; c++) {
+                double dLat = candidateLatitude[c] - lat;
+                double dLon = candidateLongitude[c] - lon;
+                distanceSquared[c] = dLat * dLat + dLon * dLon;
+            }
+            int index = stationIndex[j];
+            byte kind = stationKind[j];
+            int[] nearest = kind == GREEN ? nearestGreen : nearestRed;
+            double[] nearestSquared = kind == GREEN ? nearestGreenSquared : nearestRedSquared;
+            boolean ranked = kind != OTHER;
+            for(int c = 0; c < candidates; c++) {
+                double d = distanceSquared[c];
+                boolean in = d <= rangeSquared;
+                inRange[c] += in ? 1 : 0;
+                boolean closer = ranked & in & d < nearestSquared[c];
+                nearestSquared[c] = closer ? d : nearestSquared[c];
+                nearest[c] = closer ? index : nearest[c];
+            }
+        }
+    }
+}
@@ -25,12 +25,27 @@ public enum Direction {
 	NW(-0.0003 * Math.cos(Math.toRadians(45)), 0.0003 * Math.sin(Math.toRadians(45))), 
 	NNW(-0.0003 * Math.cos(Math.toRadians(67.5)), 0.0003 * Math.sin(Math.toRadians(67.5)));
 
+	private static final int SECTORS = 16;
+	private static final double SECTOR_ANGLE = 360.0 / SECTORS;
+	private static final Direction[] BY_SECTOR = new Direction[SECTORS];
+
+	static {
+		for(Direction d : values()) {
+			BY_SECTOR[d.sector] = d;
+		}
+	}
+
 	private final double changeOfLatitude;
 	private final double changeOfLongitude;
+	private final int sector;
+	private final double anticlockwiseAngle;
 
 	Direction(double changeOfLongitude, double changeOfLatitude) {
 		this.changeOfLongitude = changeOfLongitude;
 		this.changeOfLatitude = changeOfLatitude;
+		//directions are declared clockwise starting at N, which is the 4th sector anticlockwise from E
+		this.sector = (SECTORS + 4 - ordinal()) % SECTORS;
+		this.anticlockwiseAngle = sector * SECTOR_ANGLE;
 	}
 
 	public double changeOfLatitude() {
@@ -49,53 +64,42 @@ public enum Direction {
 	 * @return double angle that is between East direction (0 angle) and given one
 	 */
 	public double toAnticlockwiseAngle(){
-		if(this.name().equals("E")){
-			return 0;
-		}
-		if(this.name().equals("ENE")){
-			return 22.5;
-		}
-		if(this.name().equals("NE")){
-			return 45;
-		}
-		if(this.name().equals("NNE")){
-			return 67.5;
-		}
-		if(this.name().equals("N")){
-			return 90;
-		}
-		if(this.name().equals("NNW")){
-			return 112.5;
-		}
-		if(this.name().equals("NW")){
-			return 135;
-		}
-		if(this.name().equals("WNW")){
-			return 157.5;
-		}
-		if(this.name().equals("W")){
-			return 180;
-		}
-		if(this.name().equals("WSW")){
-			return 202.5;
-		}
-		if(this.name().equals("SW")){
-			return 225;
-		}
-		if(this.name().equals("SSW")){
-			return 247.5;
-		}
-		if(this.name().equals("S")){
-			return 270;
-		}
-		if(this.name().equals("SSE")){
-			return 292.5;
-		}
-		if(this.name().equals("SE")){
-			return 315;
+		return anticlockwiseAngle;
+	}
+
+	/**
+	 * <p>
+	 *     Turns the Direction by a number of sixteenths of a full turn,
+	 *     which is the same as adding <code>22.5 * sectors</code> to its
+	 *     angle and taking the Direction of the new angle, so for example
+	 *     <code>rotate(4)</code> turns left by 90 degrees and
+	 *     <code>rotate(8)</code> turns around.
+	 * </p>
+	 * @param sectors number of sectors to turn, anti-clockwise if positive and clockwise if negative
+	 * @return Direction after the turn
+	 */
+	public Direction rotate(int sectors) {
+		return BY_SECTOR[(sector + sectors) & (SECTORS - 1)];
+	}
+
+	/**
+	 * <p>
+	 *     Finds the Direction to which an anti-clockwise angle belongs.
+	 *     Each Direction covers the 22.5 degrees around its own angle,
+	 *     from 11.25 degrees below (excluded) to 11.25 degrees above (included).
+	 *     Angles between -360 and 360 are accepted, and anything that
+	 *     is not in a range of any other Direction (including NaN) is East.
+	 * </p>
+	 * @param angle angle in degrees, starting at East
+	 * @return Direction that represents given angle
+	 */
+	public static Direction fromAnticlockwiseAngle(double angle) {
+		if(angle < 0) {
+			angle += 360;
 		}
-		else {
-			return 337.5;
+		if(!(angle > SECTOR_ANGLE / 2 && angle <= 360 - SECTOR_ANGLE / 2)) {
+			return E;
 		}
+		return BY_SECTOR[(int) Math.ceil((angle - SECTOR_ANGLE / 2) / SECTOR_ANGLE)];
 	}
-}
\ No newline at end of file
+}
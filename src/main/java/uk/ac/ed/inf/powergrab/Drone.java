@@ -14,12 +14,29 @@ public abstract class Drone {
     double power;
     Position position;
     int movesCount;
+    final Lattice lattice;
+    long point;
 
     public Drone(Position initialPosition) {
         this.position = initialPosition;
         this.coins = 0.0;
         this.power = 250.0;
         this.movesCount = 0;
+        this.lattice = new Lattice(initialPosition);
+        this.point = Lattice.ORIGIN;
+    }
+
+    /**
+     * <p>
+     *     Moves the drone to the next point of its Lattice in a given direction.
+     *     The position of the drone is computed from the point, so it is the
+     *     same whichever way the drone got there.
+     * </p>
+     * @param direction Direction of the move
+     */
+    void step(Direction direction) {
+        point = Lattice.next(point, direction);
+        position = lattice.toPosition(point);
     }
 
     public abstract void move();
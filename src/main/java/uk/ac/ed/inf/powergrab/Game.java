@@ -1,8 +1,16 @@
 package uk.ac.ed.inf.powergrab;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Random;
 
 /**
@@ -22,20 +30,41 @@ public class Game implements AutoCloseable {
     private String type;
     private Random rnd;
     private GameStateMap gameStateMap;
-    private FileWriter pathGeojsonWriter;
+    private Writer pathGeojsonWriter;
     private PrintWriter pathTxtWriter;
+    private PrintStream log;
+    private MapCache mapCache;
 
     public Game(String[] args) throws IOException {
+        this(args, Paths.get(""), MapCache.fromSystemProperties(), null, System.out);
+    }
+
+    /**
+     * <p>
+     *     Creates a game whose files are written to a given directory.
+     * </p>
+     * @param args the same arguments as the command-line arguments of a single game
+     * @param outputDirectory directory where the .txt and .geojson files are written
+     * @param mapCache cache from which the map is loaded, whose directory also keeps the paths of the map
+     * @param loadedMap map of the same date that is already loaded from mapCache, or null to load the map
+     * @param log stream where the stateful drone reports its moves and the StatelessLookahead
+     *            the search of each move, or null to not report them
+     * @throws IOException if the map can't be loaded or the files can't be created
+     */
+    Game(String[] args, Path outputDirectory, MapCache mapCache, GameStateMap loadedMap, PrintStream log) throws IOException {
         date = new String[]{args[0], args[1], args[2]};
         initialPosition = new Position(Double.parseDouble(args[3]),Double.parseDouble(args[4]));
         int seed = Integer.parseInt(args[5]);
         rnd = new Random(seed);
         type = args[6];
-        gameStateMap = new GameStateMap(date, rnd);
+        this.log = log;
+        this.mapCache = mapCache;
+        gameStateMap = loadedMap == null ? new GameStateMap(date, rnd, mapCache) : new GameStateMap(loadedMap, rnd);
         String file = String.format("%s-%s-%s-%s.txt", type, date[0], date[1], date[2]);
         String fileJson = String.format("%s-%s-%s-%s.geojson", type, date[0], date[1], date[2]);
-        pathGeojsonWriter = new FileWriter(fileJson);
-        pathTxtWriter = new PrintWriter(file, "UTF-8");
+        pathGeojsonWriter = Channels.newWriter(FileChannel.open(outputDirectory.resolve(fileJson), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING), "UTF-8");
+        pathTxtWriter = new PrintWriter(Files.newBufferedWriter(outputDirectory.resolve(file), StandardCharsets.UTF_8));
     }
 
     /**
@@ -43,11 +72,11 @@ public class Game implements AutoCloseable {
      *     Method used to close the writers that are used to fill .txt and
      *     .geojson file while the game is running
      * </p>
-     * @throws Exception
-     * @see Exception
+     * @throws IOException
+     * @see IOException
      */
     @Override
-    public void close() throws Exception {
+    public void close() throws IOException {
         pathTxtWriter.close();
         pathGeojsonWriter.close();
     }
@@ -64,30 +93,34 @@ public class Game implements AutoCloseable {
     public void play() throws IOException {
         if(type.equals("stateless")) {
             StatelessMapController mapC = new StatelessMapController(gameStateMap, initialPosition);
+            mapC.lookahead = StatelessLookahead.fromSystemProperties();
             StatelessDrone drone = new StatelessDrone(initialPosition, mapC);
             while(drone.power > 1.25 && drone.movesCount < 250) {
                 Position prev = drone.position;
                 drone.move();
                 pathTxtWriter.format("%f, %f, %s, %f, %f, %f, %f \n", prev.latitude, prev.longitude, mapC.lastDirectionUsed.name(), drone.position.latitude, drone.position.longitude, drone.coins, drone.power);
+                if(log != null && mapC.lastSearch != null) log.printf("Lookahead: %s \n", mapC.lastSearch);
             }
             mapC.addPathToMap();
-            String json = gameStateMap.features.toJson();
-            pathGeojsonWriter.write(json);
-            pathGeojsonWriter.flush();
+            gameStateMap.writeJson(pathGeojsonWriter);
             return;
         }
 
         if(type.equals("stateful")) {
-            String file = String.format("%s-%s-%s-%s.txt", type, date[0], date[1], date[2]);
-            StatefulDrone drone = new StatefulDrone(initialPosition, gameStateMap, file);
-            while(drone.power > 0 && drone.movesCount < 250) {
+            StatefulDrone drone = new StatefulDrone(initialPosition, gameStateMap, pathTxtWriter, log);
+            drone.pathCache = PathCache.fromSystemProperties(mapCache, date, gameStateMap.stations);
+            while(!drone.isFinished()) {
                 drone.move();
             }
+            if(drone.pathCache != null) {
+                try {
+                    drone.pathCache.save();
+                } catch (IOException e) {
+                    //the paths only save time in the next runs
+                }
+            }
             drone.addPathToMap();
-            String json = gameStateMap.features.toJson();
-            pathGeojsonWriter.write(json);
-            pathGeojsonWriter.flush();
-            drone.pathTxtWriter.close();
+            gameStateMap.writeJson(pathGeojsonWriter);
         }
     }
 }
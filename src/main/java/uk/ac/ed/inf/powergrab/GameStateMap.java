@@ -1,49 +1,89 @@
 package uk.ac.ed.inf.powergrab;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Random;
-import java.util.stream.Collectors;
-import com.mapbox.geojson.*;
 
 /**
  * <h1>
- *     Map of a Game represented by FeatureCollection.
+ *     Map of a Game represented by StationTable.
  * </h1>
  * <p>
- *     Provides access to FeatureCollection that includes
+ *     Provides access to StationTable that includes
  *     all stations on the map, where drone in moving.
  *     It also provides usefull methods that are used to
- *     manipulate the features or extract some information
+ *     manipulate the stations or extract some information
  *     from them.
  * </p>
+ * <p>
+ *     The StationTable and the StationGrid are never changed and can be
+ *     shared by many games. What a game does to the stations is kept in
+ *     its own StationOverlay, so the current coins and power of a station
+ *     are read with <code>coins</code> and <code>power</code>.
+ * </p>
  */
 public class GameStateMap {
-	FeatureCollection features;
-	Random random;
+	static final double CHARGING_RANGE = 0.00025;
+
+	final StationTable stations;
+	final StationGrid grid;
+	final StationOverlay overlay;
+	final RandomSource random;
+	private List<Position> flightPath;
 	
 	public GameStateMap(String[] date, Random rnd) throws IOException {
-		this.random = rnd;
-		String mapString = String.format("http://homepages.inf.ed.ac.uk/stg/powergrab/%s/%s/%s/powergrabmap.geojson", date[2], date[1], date[0]);
-		URL mapUrl;
-		try {
-	        mapUrl = new URL(mapString);
-	    } catch (IOException e) {
-	        throw new RuntimeException(e);
-	    }
-		HttpURLConnection conn = (HttpURLConnection) mapUrl.openConnection();
-		conn.setReadTimeout(10000);
-		conn.setConnectTimeout(15000);
-		conn.setRequestMethod("GET");
-		conn.setDoInput(true);
-		conn.connect();
-		String mapSource = new BufferedReader(new InputStreamReader(conn.getInputStream())).lines().collect(Collectors.joining("\n"));
-		this.features = FeatureCollection.fromJson(mapSource);
+		this(date, rnd, MapCache.fromSystemProperties());
+	}
+
+	public GameStateMap(String[] date, Random rnd, MapCache mapCache) throws IOException {
+		this(PgMapFile.read(mapCache.fetchCompiled(date)), rnd);
+	}
+
+	/**
+	 * <p>
+	 *     Creates the map of a game on stations which are already in a
+	 *     StationTable, for example a map that was generated rather than
+	 *     downloaded. The table is not changed by the game.
+	 * </p>
+	 * @param stations StationTable of the map
+	 * @param rnd Random used by the game
+	 */
+	GameStateMap(StationTable stations, Random rnd) {
+		this.random = RandomSource.of(rnd);
+		this.stations = stations;
+		this.grid = new StationGrid(stations, CHARGING_RANGE);
+		this.overlay = new StationOverlay(stations);
+	}
+
+	/**
+	 * <p>
+	 *     Creates the map of another game on the same date as a map that is
+	 *     already loaded, without reading the map again. The new map shares
+	 *     the StationTable and the StationGrid with the given map and starts
+	 *     with an empty StationOverlay of its own.
+	 * </p>
+	 * @param loaded map of the same date, it is not changed by the new game
+	 * @param rnd Random used by the new game
+	 */
+	GameStateMap(GameStateMap loaded, Random rnd) {
+		this(loaded, RandomSource.of(rnd));
+	}
+
+	/**
+	 * <p>
+	 *     Same as <code>GameStateMap(GameStateMap, Random)</code> for a game
+	 *     whose random choices come from a given RandomSource.
+	 * </p>
+	 * @param loaded map of the same date, it is not changed by the new game
+	 * @param random RandomSource used by the new game
+	 */
+	GameStateMap(GameStateMap loaded, RandomSource random) {
+		this.random = random;
+		this.stations = loaded.stations;
+		this.grid = loaded.grid;
+		this.overlay = new StationOverlay(stations);
 	}
 
 	/**
@@ -51,22 +91,14 @@ public class GameStateMap {
 	 *     This method is used after the drone finishes its movement,
 	 *     when the game is finished.
 	 *     It is called to add the previous positions (path) that
-	 *     drone has been to, to the FeatureCollection features, so
-	 *     for example, it is possible to use GEOJSON visualiser
-	 *     to see actual path of a drone.
+	 *     drone has been to, to the map, so for example, it is
+	 *     possible to use GEOJSON visualiser to see actual path
+	 *     of a drone. The path is written after all the stations.
 	 * </p>
-	 *
 	 * @param path array of drone's previous positions
 	 */
 	public void addFlightPath(Position[] path) {
-		List<Point> coords = new ArrayList<Point>();
-		for(int i=0;i<path.length;i++) {
-			Point p = Point.fromLngLat(path[i].longitude, path[i].latitude);
-			coords.add(p);
-		}
-		LineString line = LineString.fromLngLats(coords);
-		Feature feature = Feature.fromGeometry(line);
-		this.features.features().add(feature);
+		this.flightPath = Arrays.asList(path);
 	}
 
 	/**
@@ -102,12 +134,14 @@ public class GameStateMap {
 	 *     able to move to, checking only if it is in the play area of a map.
 	 * </p>
 	 * @param position the position from which the drone moves
-	 * @return HashMap where key is the Direction which drone can move to and
+	 * @return EnumMap where key is the Direction which drone can move to and
 	 * 		   the corresponding value is the Position where move will be if
-	 * 		   it moves using its key (Direction).
+	 * 		   it moves using its key (Direction). Directions are in the order
+	 * 		   in which they are declared, so games with the same seed make
+	 * 		   the same moves.
 	 */
-	public HashMap<Direction, Position> getPossiblePositions(Position position) {
-		HashMap<Direction, Position> possiblePositions = new HashMap<Direction,Position>();
+	public EnumMap<Direction, Position> getPossiblePositions(Position position) {
+		EnumMap<Direction, Position> possiblePositions = new EnumMap<>(Direction.class);
 		for (Direction d : Direction.values()) { 
 			if(position.nextPosition(d).inPlayArea()) {
 				possiblePositions.put(d, position.nextPosition(d));
@@ -118,34 +152,65 @@ public class GameStateMap {
 
 	/**
 	 * <p>
-	 *     This method updates fields of Feature in FeatureCollection features
-	 *     which represent the map of current play area.
+	 *     This method updates coins and power of a station in the StationTable
+	 *     which represent the current state of the play area.
 	 *     Method updates coins and power which drone takes or gives to the station.
 	 * </p>
 	 * @param stationId id of a station that was in range of a drone
-	 *                   Each Feature that corresponds to the station is
-	 *                   uniquely represented by its id
+	 *                   Each station is uniquely represented by its id
 	 * @param coins current amount of coins that drone has, in case of station
 	 *              being red, the coins are given to the station
 	 * @param power current amount of power of the drone, used for same reason as coins
 	 */
 	public void updateStation(String stationId, double coins, double power){
-		for(Feature f : features.features()){
-			if(f.getProperty("id").getAsString().equals(stationId)){
-				//take all positive coins/power
-				if(f.getProperty("marker-symbol").getAsString().equals("lighthouse")) {
-					f.addNumberProperty("coins", 0);
-					f.addNumberProperty("power", 0);
-					break;
-				}
-				//add drone's coins/power to negative ones
-				f.addNumberProperty("coins", f.getProperty("coins").getAsDouble() + coins);
-				f.addNumberProperty("power", f.getProperty("power").getAsDouble() + power);
-				break;
-			}
+		int station = stations.indexOf(stationId);
+		if(station != -1) {
+			updateStation(station, coins, power);
 		}
 	}
 
+	/**
+	 * <p>
+	 *     Same as <code>updateStation(String, double, double)</code> for a station
+	 *     that is already known by its index in the StationTable.
+	 * </p>
+	 * @param station index of the station in the StationTable
+	 * @param coins current amount of coins that drone has
+	 * @param power current amount of power of the drone
+	 */
+	void updateStation(int station, double coins, double power){
+		//takes all positive coins/power, adds drone's coins/power to negative ones
+		overlay.update(station, coins, power);
+	}
+
+	/**
+	 * @param station index of the station in the StationTable
+	 * @return coins the station has now in this game
+	 */
+	double coins(int station) {
+		return overlay.coins(station);
+	}
+
+	/**
+	 * @param station index of the station in the StationTable
+	 * @return power the station has now in this game
+	 */
+	double power(int station) {
+		return overlay.power(station);
+	}
+
+	/**
+	 * <p>
+	 *     Writes the map, with the current state of its stations and the flight
+	 *     path if it was added, as a GeoJSON FeatureCollection.
+	 * </p>
+	 * @param out Writer where the map is streamed, it is flushed but not closed
+	 * @throws IOException if writing fails
+	 */
+	public void writeJson(Writer out) throws IOException {
+		GeoJsonMapWriter.write(stations, overlay, flightPath, out);
+	}
+
 	/**
 	 * <p>
 	 *     This method transforms a Direction to the angle which it represents.
@@ -158,63 +223,13 @@ public class GameStateMap {
 	 *     For example East corresponds to 0 angle, however because of the
 	 *     range East lies between 0 + 11.25 and 0 - 11.25, which means
 	 *     11.25 and 348.75 degrees.
+	 *     The Direction is found with <code>Direction.fromAnticlockwiseAngle</code>,
+	 *     which computes the range of the angle instead of trying each of them.
 	 * </p>
 	 * @param angle angle which lies in a range of some Direction
 	 * @return Direction that represents given angle
 	 */
 	public Direction getDirectionFromAngle(double angle){
-		if(angle < 0){
-			angle += 360;
-		}
-
-	    if(angle <= 11.25 || angle > 348.75){
-	        return Direction.E;
-        }
-        if(angle <= 33.75 && angle > 11.25){
-            return Direction.ENE;
-        }
-        if(angle <= 56.25 && angle > 33.75){
-            return Direction.NE;
-        }
-        if(angle <= 78.75 && angle > 56.25){
-            return Direction.NNE;
-        }
-        if(angle <= 101.25 && angle > 78.75){
-            return Direction.N;
-        }
-        if(angle <= 123.75 && angle > 101.25){
-            return Direction.NNW;
-        }
-        if(angle <= 146.25 && angle > 123.75){
-            return Direction.NW;
-        }
-        if(angle <= 168.75 && angle > 146.25){
-            return Direction.WNW;
-        }
-        if(angle <= 191.25 && angle > 168.75){
-            return Direction.W;
-        }
-        if(angle <= 213.75 && angle > 191.25){
-            return Direction.WSW;
-        }
-        if(angle <= 236.25 && angle > 213.75){
-            return Direction.SW;
-        }
-        if(angle <= 258.75 && angle > 236.25){
-            return Direction.SSW;
-        }
-        if(angle <= 281.25 && angle > 258.75){
-            return Direction.S;
-        }
-        if(angle <= 303.75 && angle > 281.25){
-            return Direction.SSE;
-        }
-        if(angle <= 326.25 && angle > 303.75){
-            return Direction.SE;
-        }
-        if(angle <= 348.75 && angle > 326.25) {
-            return Direction.ESE;
-        }
-        else return null;
-    }
+		return Direction.fromAnticlockwiseAngle(angle);
+	}
 }
@@ -0,0 +1,171 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * <h1>
+ *     Streaming reader of the GeoJSON maps.
+ * </h1>
+ * <p>
+ *     Reads a map token by token and puts its stations straight into a
+ *     StationTable, without keeping the document as a String or building
+ *     Gson and Mapbox objects for it. Only the fields used by the game are
+ *     read: id, coordinates, coins, power, marker-symbol and marker-color
+ *     (which is needed to write the map back). Features that aren't Points
+ *     and any other members are skipped.
+ * </p>
+ */
+class GeoJsonMapReader {
+
+    private GeoJsonMapReader() {
+    }
+
+    static StationTable read(ReadableByteChannel channel) throws IOException {
+        return read(Channels.newInputStream(channel));
+    }
+
+    /**
+     * <p>
+     *     Reads all stations of a map. The stream is not closed.
+     * </p>
+     * @param in stream with a GeoJSON FeatureCollection
+     * @return StationTable with the stations in the order of the map
+     * @throws IOException if the stream can't be read or isn't a valid map
+     */
+    static StationTable read(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 16384));
+        StationTable.Builder builder = new StationTable.Builder();
+        Station station = new Station();
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if(!reader.nextName().equals("features")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginArray();
+            while(reader.hasNext()) {
+                station.clear();
+                readFeature(reader, station);
+                if(station.isPoint) {
+                    if(station.id == null || station.symbol == null || Double.isNaN(station.latitude)) {
+                        throw new IOException("Station without id, marker-symbol or coordinates at " + reader.getPath());
+                    }
+                    builder.add(station.id, station.latitude, station.longitude, station.coins, station.power,
+                            station.symbol, station.color);
+                }
+            }
+            reader.endArray();
+        }
+        reader.endObject();
+        return builder.build();
+    }
+
+    private static void readFeature(JsonReader reader, Station station) throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(name.equals("geometry") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readGeometry(reader, station);
+            }
+            else if(name.equals("properties") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readProperties(reader, station);
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readGeometry(JsonReader reader, Station station) throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(name.equals("type")) {
+                station.isPoint = reader.nextString().equals("Point");
+            }
+            else if(name.equals("coordinates") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                //nested arrays belong to other geometries, which are not stations
+                if(reader.hasNext() && reader.peek() == JsonToken.NUMBER) {
+                    station.longitude = reader.nextDouble();
+                    station.latitude = reader.nextDouble();
+                }
+                while(reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            }
+            else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static void readProperties(JsonReader reader, Station station) throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch(name) {
+                case "id":
+                    station.id = reader.nextString();
+                    break;
+                //coins and power are strings in the maps, nextDouble parses both forms
+                case "coins":
+                    station.coins = reader.nextDouble();
+                    break;
+                case "power":
+                    station.power = reader.nextDouble();
+                    break;
+                case "marker-symbol":
+                    station.symbol = reader.nextString();
+                    break;
+                case "marker-color":
+                    station.color = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Fields of the feature that is being read, reused for every feature.
+     */
+    private static class Station {
+        boolean isPoint;
+        String id;
+        double latitude;
+        double longitude;
+        double coins;
+        double power;
+        String symbol;
+        String color;
+
+        void clear() {
+            isPoint = false;
+            id = null;
+            latitude = Double.NaN;
+            longitude = Double.NaN;
+            coins = 0;
+            power = 0;
+            symbol = null;
+            color = null;
+        }
+    }
+}
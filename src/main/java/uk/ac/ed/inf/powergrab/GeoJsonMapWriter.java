@@ -0,0 +1,105 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * <h1>
+ *     Streaming writer of the final map and the flight path.
+ * </h1>
+ * <p>
+ *     Writes the stations of a StationTable and the flight path of the drone
+ *     as a GeoJSON FeatureCollection directly to a Writer, token by token,
+ *     without building Mapbox Features and Points or the whole document as
+ *     a String. The output has the same layout as Mapbox's toJson, including
+ *     coordinates rounded to 7 decimal places.
+ * </p>
+ */
+class GeoJsonMapWriter {
+
+    private GeoJsonMapWriter() {
+    }
+
+    /**
+     * <p>
+     *     Writes the stations of a map as they are in the StationTable.
+     *     The writer is flushed but not closed.
+     * </p>
+     * @param stations StationTable of the map
+     * @param flightPath positions of the drone in order, or null if there is no path to write
+     * @param out Writer where the GeoJSON is written
+     */
+    static void write(StationTable stations, List<Position> flightPath, Writer out) throws IOException {
+        write(stations, new StationOverlay(stations), flightPath, out);
+    }
+
+    /**
+     * <p>
+     *     Writes the map with the coins and power its stations have in a game.
+     *     The writer is flushed but not closed.
+     * </p>
+     * @param stations StationTable of the map
+     * @param overlay changes the game made to the stations
+     * @param flightPath positions of the drone in order, or null if there is no path to write
+     * @param out Writer where the GeoJSON is written
+     */
+    static void write(StationTable stations, StationOverlay overlay, List<Position> flightPath, Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginObject();
+        json.name("type").value("FeatureCollection");
+        json.name("features").beginArray();
+        for(int i = 0; i < stations.size; i++) {
+            json.beginObject();
+            json.name("type").value("Feature");
+            json.name("geometry").beginObject();
+            json.name("type").value("Point");
+            json.name("coordinates");
+            writeCoordinates(json, stations.longitude[i], stations.latitude[i]);
+            json.endObject();
+            json.name("properties").beginObject();
+            json.name("id").value(stations.id[i]);
+            json.name("coins").value(overlay.coins(i));
+            json.name("power").value(overlay.power(i));
+            json.name("marker-symbol").value(stations.isLighthouse(i) ? "lighthouse" : "danger");
+            if(stations.color[i] != null) {
+                json.name("marker-color").value(stations.color[i]);
+            }
+            json.endObject();
+            json.endObject();
+        }
+        if(flightPath != null) {
+            json.beginObject();
+            json.name("type").value("Feature");
+            json.name("geometry").beginObject();
+            json.name("type").value("LineString");
+            json.name("coordinates").beginArray();
+            for(Position p : flightPath) {
+                writeCoordinates(json, p.longitude, p.latitude);
+            }
+            json.endArray();
+            json.endObject();
+            json.name("properties").beginObject().endObject();
+            json.endObject();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeCoordinates(JsonWriter json, double longitude, double latitude) throws IOException {
+        json.beginArray();
+        json.value(trim(longitude));
+        json.value(trim(latitude));
+        json.endArray();
+    }
+
+    /**
+     * Rounds a coordinate to 7 decimal places, as Mapbox does when it writes GeoJSON.
+     */
+    private static double trim(double value) {
+        return Math.round(value * 1e7) / 1e7;
+    }
+}
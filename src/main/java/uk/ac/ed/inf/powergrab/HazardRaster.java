@@ -0,0 +1,252 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * <h1>
+ *     Where in the play area a drone would charge from a danger station.
+ * </h1>
+ * <p>
+ *     A point is safe if no danger station is in charging range of it, or
+ *     if some other station in range is strictly closer than every danger
+ *     station in range, since the drone charges from the closest one. This
+ *     is the rule the drones use to decide if a move is safe.
+ * </p>
+ * <p>
+ *     The play area is divided into square cells much smaller than a move,
+ *     and each cell is marked once, by comparing the closest and furthest
+ *     points of the cell with the stations around it, as either safe
+ *     everywhere, danger everywhere, or mixed. The marks are kept in two
+ *     bitsets, so for most points the rule is a lookup of a bit; only points
+ *     in a mixed cell, on the edge of the range of some station, and points
+ *     outside of the play area are checked against the stations.
+ * </p>
+ * <p>
+ *     Which station is a danger station never changes during a game, and a
+ *     lighthouse which was emptied is still the one charged from when it is
+ *     the closest, so the raster only depends on the StationTable. It is
+ *     marked once per map, with the rows in parallel, and shared by all
+ *     games on that map. Only the game which asks for it first marks it,
+ *     and games on other maps don't wait for it. The raster keeps no reference to the table, so it
+ *     doesn't keep the map alive in the cache, and the stations are passed
+ *     in for the points which have to be checked against them.
+ * </p>
+ */
+final class HazardRaster {
+    static final double CELL = 0.00002;
+    //margins which keep the marks right whatever the rounding of the distances
+    private static final double CELL_MARGIN = 1e-9;
+    private static final double DISTANCE_MARGIN = 1e-10;
+    private static final double RANGE = GameStateMap.CHARGING_RANGE;
+    private static final int SAFE_CELL = 0;
+    private static final int DANGER_CELL = 1;
+    private static final int MIXED_CELL = 2;
+    private static final Map<StationTable, CompletableFuture<HazardRaster>> CACHE = new WeakHashMap<>();
+
+    final int rows;
+    final int columns;
+    private final int wordsPerRow;
+    private final long[] danger;
+    private final long[] mixed;
+
+    HazardRaster(StationTable stations) {
+        this.rows = (int) Math.ceil((Position.MAX_LATITUDE - Position.MIN_LATITUDE) / CELL);
+        this.columns = (int) Math.ceil((Position.MAX_LONGITUDE - Position.MIN_LONGITUDE) / CELL);
+        //each row starts a new word, so rows can be marked in parallel
+        this.wordsPerRow = (columns + 63) >>> 6;
+        this.danger = new long[rows * wordsPerRow];
+        this.mixed = new long[rows * wordsPerRow];
+        IntStream.range(0, rows).parallel().forEach(row -> markRow(stations, row));
+    }
+
+    /**
+     * @return raster of the stations of a map, marked the first time it is asked for
+     */
+    static HazardRaster of(GameStateMap gameStateMap) {
+        CompletableFuture<HazardRaster> raster;
+        boolean mark;
+        synchronized(CACHE) {
+            raster = CACHE.get(gameStateMap.stations);
+            mark = raster == null;
+            if(mark) {
+                raster = new CompletableFuture<>();
+                CACHE.put(gameStateMap.stations, raster);
+            }
+        }
+        if(mark) {
+            try {
+                raster.complete(new HazardRaster(gameStateMap.stations));
+            } catch (RuntimeException | Error e) {
+                synchronized(CACHE) {
+                    CACHE.remove(gameStateMap.stations);
+                }
+                raster.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return raster.join();
+    }
+
+    /**
+     * <p>
+     *     Tells if the closest station in charging range of a point is not a danger station.
+     * </p>
+     * @param gameStateMap map of the stations the raster was marked for
+     * @param lat latitude of the point
+     * @param lon longitude of the point
+     * @param nearby array used when the point has to be checked against the stations,
+     *               it must be able to hold all the stations of the table
+     * @return true if the drone wouldn't charge from a danger station at the point
+     */
+    boolean isSafe(GameStateMap gameStateMap, double lat, double lon, int[] nearby) {
+        int row = (int) Math.floor((lat - Position.MIN_LATITUDE) / CELL);
+        int column = (int) Math.floor((lon - Position.MIN_LONGITUDE) / CELL);
+        if(row >= 0 && row < rows && column >= 0 && column < columns) {
+            int word = row * wordsPerRow + (column >>> 6);
+            long bit = 1L << column;
+            if((mixed[word] & bit) == 0) {
+                return (danger[word] & bit) == 0;
+            }
+        }
+        return isSafeAt(gameStateMap.stations, gameStateMap.grid, lat, lon, nearby);
+    }
+
+    /**
+     * <p>
+     *     The rule itself, checked against the stations in range of the point.
+     * </p>
+     */
+    private static boolean isSafeAt(StationTable stations, StationGrid grid, double lat, double lon, int[] nearby) {
+        int redStationInRange = -1;
+        double redSmallestDistance = 10;
+        double greenSmallestDistance = 10;
+        int inRange = grid.stationsWithin(lat, lon, RANGE, nearby);
+        for(int k = 0; k < inRange; k++) {
+            int i = nearby[k];
+            double distance = stations.distance(i, lat, lon);
+            if(stations.kind[i] == StationTable.DANGER) {
+                if(distance < redSmallestDistance) {
+                    redSmallestDistance = distance;
+                    redStationInRange = i;
+                }
+            }
+            else if(distance < greenSmallestDistance) {
+                greenSmallestDistance = distance;
+            }
+        }
+        return redStationInRange == -1 || greenSmallestDistance < redSmallestDistance;
+    }
+
+    /**
+     * @return true if a cell is mixed, so isSafe checks its points against the stations
+     */
+    boolean isMixed(int row, int column) {
+        return (mixed[row * wordsPerRow + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    /**
+     * <p>
+     *     Marks the cells of a row. The stations which can be in range of the
+     *     row are sorted by longitude, and each cell is compared with the ones
+     *     which can be in range of it, a window which moves along the row.
+     * </p>
+     */
+    private void markRow(StationTable stations, int row) {
+        double fromLat = Position.MIN_LATITUDE + row * CELL - CELL_MARGIN;
+        double toLat = Position.MIN_LATITUDE + (row + 1) * CELL + CELL_MARGIN;
+        double reach = RANGE + DISTANCE_MARGIN;
+        Integer[] band = new Integer[stations.size];
+        int count = 0;
+        for(int i = 0; i < stations.size; i++) {
+            if(stations.latitude[i] >= fromLat - reach && stations.latitude[i] <= toLat + reach) {
+                band[count++] = i;
+            }
+        }
+        Arrays.sort(band, 0, count, Comparator.comparingDouble(i -> stations.longitude[i]));
+        int first = 0;
+        int last = 0;
+        for(int column = 0; column < columns; column++) {
+            double fromLon = Position.MIN_LONGITUDE + column * CELL - CELL_MARGIN;
+            double toLon = Position.MIN_LONGITUDE + (column + 1) * CELL + CELL_MARGIN;
+            while(first < count && stations.longitude[band[first]] < fromLon - reach) {
+                first++;
+            }
+            while(last < count && stations.longitude[band[last]] <= toLon + reach) {
+                last++;
+            }
+            int word = row * wordsPerRow + (column >>> 6);
+            long bit = 1L << column;
+            switch(mark(stations, fromLat, toLat, fromLon, toLon, band, first, last)) {
+                case DANGER_CELL:
+                    danger[word] |= bit;
+                    break;
+                case MIXED_CELL:
+                    mixed[word] |= bit;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * <p>
+     *     Marks a cell from the closest and furthest distances between its
+     *     points and the stations around it. The cell is safe if no danger
+     *     station can be in range, or if some other station is in range of
+     *     every point and closer to all of them than any danger station can
+     *     be. It is danger if some danger station is in range of every point
+     *     and closer to all of them than any other station in range can be.
+     * </p>
+     */
+    private static int mark(StationTable stations, double fromLat, double toLat, double fromLon, double toLon, Integer[] band, int first, int last) {
+        //every point of the cell is at least ...AtLeast from all the stations of a kind
+        //which can be in range of it, and at most ...AtMost from one of them, all squared
+        double redAtLeast = Double.POSITIVE_INFINITY;
+        double redAtMost = Double.POSITIVE_INFINITY;
+        double greenAtLeast = Double.POSITIVE_INFINITY;
+        double greenAtMost = Double.POSITIVE_INFINITY;
+        double reachSquared = (RANGE + DISTANCE_MARGIN) * (RANGE + DISTANCE_MARGIN);
+        for(int k = first; k < last; k++) {
+            int i = band[k];
+            double lat = stations.latitude[i];
+            double lon = stations.longitude[i];
+            double closestLat = Math.max(0, Math.max(fromLat - lat, lat - toLat));
+            double closestLon = Math.max(0, Math.max(fromLon - lon, lon - toLon));
+            double closest = closestLat * closestLat + closestLon * closestLon;
+            if(closest > reachSquared) {
+                continue;
+            }
+            double furthestLat = Math.max(Math.abs(lat - fromLat), Math.abs(lat - toLat));
+            double furthestLon = Math.max(Math.abs(lon - fromLon), Math.abs(lon - toLon));
+            double furthest = furthestLat * furthestLat + furthestLon * furthestLon;
+            if(stations.kind[i] == StationTable.DANGER) {
+                redAtLeast = Math.min(redAtLeast, closest);
+                redAtMost = Math.min(redAtMost, furthest);
+            }
+            else {
+                greenAtLeast = Math.min(greenAtLeast, closest);
+                greenAtMost = Math.min(greenAtMost, furthest);
+            }
+        }
+        if(redAtLeast == Double.POSITIVE_INFINITY) {
+            return SAFE_CELL;
+        }
+        redAtLeast = Math.sqrt(redAtLeast);
+        redAtMost = Math.sqrt(redAtMost);
+        greenAtLeast = Math.sqrt(greenAtLeast);
+        greenAtMost = Math.sqrt(greenAtMost);
+        if(greenAtMost <= RANGE - DISTANCE_MARGIN && greenAtMost + DISTANCE_MARGIN < redAtLeast) {
+            return SAFE_CELL;
+        }
+        if(redAtMost <= RANGE - DISTANCE_MARGIN && redAtMost + DISTANCE_MARGIN < greenAtLeast) {
+            return DANGER_CELL;
+        }
+        return MIXED_CELL;
+    }
+}
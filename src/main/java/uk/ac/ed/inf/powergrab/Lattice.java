@@ -0,0 +1,122 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * <h1>
+ *     Points the drone can reach from its starting position.
+ * </h1>
+ * <p>
+ *     Every move adds the change of latitude and longitude of one of the
+ *     16 directions, and opposite directions (N and S, NNE and SSW, ...)
+ *     cancel each other out, so every reachable point is the start plus,
+ *     for each of the 8 axes, a whole number of steps along it. A point is
+ *     stored as these 8 net step counts, one signed byte each, packed into
+ *     a long: axis k holds the steps of the k-th declared direction minus
+ *     the steps of the direction opposite to it.
+ * </p>
+ * <p>
+ *     Moving to the next point is integer arithmetic that allocates
+ *     nothing, and two paths reach the same point exactly when their
+ *     packed longs are equal, however the moves were ordered, so revisits
+ *     can be detected without comparing doubles. The latitude and longitude
+ *     of a point are always computed from its step counts in the same way,
+ *     so they don't drift with the length of the path either.
+ * </p>
+ * <p>
+ *     Each axis holds from -128 to 127 net steps, which is far more than
+ *     a path in the play area can have.
+ * </p>
+ */
+final class Lattice {
+    static final long ORIGIN = 0L;
+    static final int AXES = 8;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final double[] AXIS_LATITUDE = new double[AXES];
+    private static final double[] AXIS_LONGITUDE = new double[AXES];
+
+    static {
+        for(int k = 0; k < AXES; k++) {
+            AXIS_LATITUDE[k] = DIRECTIONS[k].changeOfLatitude();
+            AXIS_LONGITUDE[k] = DIRECTIONS[k].changeOfLongitude();
+        }
+    }
+
+    private final double originLatitude;
+    private final double originLongitude;
+
+    /**
+     * @param origin Position which is the point ORIGIN, the start of the drone
+     */
+    Lattice(Position origin) {
+        this.originLatitude = origin.latitude;
+        this.originLongitude = origin.longitude;
+    }
+
+    /**
+     * <p>
+     *     The point after one move in a given direction.
+     * </p>
+     * @param point packed point
+     * @param direction Direction of the move
+     * @return packed point after the move
+     * @throws ArithmeticException if the axis of the direction would go out of the range of a byte
+     */
+    static long next(long point, Direction direction) {
+        int ordinal = direction.ordinal();
+        int shift = (ordinal & (AXES - 1)) << 3;
+        int steps = (byte) (point >>> shift) + (ordinal < AXES ? 1 : -1);
+        if(steps != (byte) steps) {
+            throw new ArithmeticException("Too many steps along the axis of " + direction);
+        }
+        return (point & ~(0xFFL << shift)) | ((long) (steps & 0xFF) << shift);
+    }
+
+    /**
+     * @return net number of steps of a point along an axis (the direction declared k-th)
+     */
+    static int steps(long point, int axis) {
+        return (byte) (point >>> (axis << 3));
+    }
+
+    double latitude(long point) {
+        double change = 0;
+        for(int k = 0; k < AXES; k++) {
+            change += steps(point, k) * AXIS_LATITUDE[k];
+        }
+        return originLatitude + change;
+    }
+
+    double longitude(long point) {
+        double change = 0;
+        for(int k = 0; k < AXES; k++) {
+            change += steps(point, k) * AXIS_LONGITUDE[k];
+        }
+        return originLongitude + change;
+    }
+
+    boolean inPlayArea(long point) {
+        return Position.inPlayArea(latitude(point), longitude(point));
+    }
+
+    /**
+     * <p>
+     *     Squared distance between a point and a given latitude and longitude,
+     *     which can be compared with a squared range without a square root.
+     * </p>
+     */
+    double distanceSquared(long point, double lat, double lon) {
+        double dLat = latitude(point) - lat;
+        double dLon = longitude(point) - lon;
+        return dLat * dLat + dLon * dLon;
+    }
+
+    /**
+     * <p>
+     *     Converts a point to a Position, which is only needed where the
+     *     position is written out or handed over to code outside of the drone.
+     * </p>
+     */
+    Position toPosition(long point) {
+        return new Position(latitude(point), longitude(point));
+    }
+}
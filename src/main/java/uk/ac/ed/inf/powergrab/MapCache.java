@@ -0,0 +1,418 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1>
+ *     Local on-disk cache of the daily PowerGrab maps.
+ * </h1>
+ * <p>
+ *     Each map is stored in the cache directory under its date
+ *     (<code>yyyy-mm-dd.geojson</code>) together with a SHA-256 digest
+ *     of its content (<code>yyyy-mm-dd.sha256</code>). An entry is only
+ *     used when its digest matches, otherwise it is thrown away and the
+ *     map is downloaded again.
+ * </p>
+ * <p>
+ *     Next to the GeoJSON the cache keeps the map compiled to the binary
+ *     .pgmap format (<code>yyyy-mm-dd.pgmap</code>), which is what the
+ *     game loads. It records the digest of the GeoJSON it was compiled
+ *     from and is compiled again whenever that digest doesn't match.
+ *     The paths drones found on the map may be kept there as well
+ *     (<code>yyyy-mm-dd.pgpaths</code>, see PathCache).
+ * </p>
+ * <p>
+ *     The total size of the directory is kept under a cap by evicting
+ *     the least recently used maps, where the last use of a map is
+ *     recorded in the modification time of its file.
+ *     In offline mode the cache never touches the network and a map
+ *     that is not cached is reported as missing.
+ * </p>
+ */
+public class MapCache {
+    static final String DEFAULT_SERVER = "http://homepages.inf.ed.ac.uk/stg/powergrab";
+    static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private static final String MAP_SUFFIX = ".geojson";
+    private static final String DIGEST_SUFFIX = ".sha256";
+    private static final String COMPILED_SUFFIX = ".pgmap";
+    static final String PATHS_SUFFIX = ".pgpaths";
+
+    private final Path directory;
+    private final long maxBytes;
+    private final String serverUrl;
+    private final boolean offline;
+
+    public MapCache(Path directory, long maxBytes, String serverUrl, boolean offline) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.serverUrl = serverUrl;
+        this.offline = offline;
+    }
+
+    /**
+     * <p>
+     *     Creates the cache configured by system properties:
+     *     <code>powergrab.cache.dir</code> (defaults to ~/.powergrab/maps),
+     *     <code>powergrab.cache.maxBytes</code>, <code>powergrab.server</code>
+     *     and <code>powergrab.offline</code>.
+     * </p>
+     * @return MapCache used by the game when no other cache is given
+     */
+    public static MapCache fromSystemProperties() {
+        Path defaultDirectory = Paths.get(System.getProperty("user.home"), ".powergrab", "maps");
+        String directory = System.getProperty("powergrab.cache.dir");
+        return new MapCache(directory == null ? defaultDirectory : Paths.get(directory),
+                Long.getLong("powergrab.cache.maxBytes", DEFAULT_MAX_BYTES),
+                System.getProperty("powergrab.server", DEFAULT_SERVER),
+                Boolean.getBoolean("powergrab.offline"));
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * <p>
+     *     Returns the file with the map for a given date. The cached copy is
+     *     used if it is present and intact, otherwise the map is downloaded
+     *     into the cache (unless the cache is offline).
+     * </p>
+     * @param date array of day, month and year as given on the command line
+     * @return Path of the GeoJSON map of that day in the cache directory
+     * @throws FileNotFoundException if there is no such map on the server, or
+     *                               it isn't cached and the cache is offline
+     * @throws IOException if the map is neither cached nor can be downloaded
+     */
+    public Path fetch(String[] date) throws IOException {
+        String key = key(date);
+        Path cached = verified(key);
+        if(cached != null) {
+            return cached;
+        }
+        if(offline) {
+            throw new FileNotFoundException("Map for " + key + " is not in " + directory + " and offline mode is on");
+        }
+        return download(key, date);
+    }
+
+    /**
+     * <p>
+     *     Returns the GeoJSON source of the map for a given date,
+     *     see <code>fetch</code>.
+     * </p>
+     * @param date array of day, month and year as given on the command line
+     * @return String with the GeoJSON map of that day
+     * @throws IOException if the map is neither cached nor can be downloaded
+     */
+    public String load(String[] date) throws IOException {
+        return new String(Files.readAllBytes(fetch(date)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * <p>
+     *     Returns the file with the map for a given date compiled to the
+     *     .pgmap format. If there is no compiled map for the cached GeoJSON
+     *     yet, the GeoJSON is fetched as by <code>fetch</code> and compiled.
+     *     The digest recorded in the compiled map is the one of the bytes it
+     *     was compiled from, and the compiled map counts towards the size cap
+     *     as soon as it is written.
+     * </p>
+     * @param date array of day, month and year as given on the command line
+     * @return Path of the .pgmap file of that day in the cache directory
+     * @throws IOException if the map is neither cached nor can be downloaded
+     */
+    public Path fetchCompiled(String[] date) throws IOException {
+        String key = key(date);
+        Path compiled = directory.resolve(key + COMPILED_SUFFIX);
+        String digest = readDigest(key);
+        if(digest != null && PgMapFile.isCompiledFrom(compiled, digest)) {
+            touch(directory.resolve(key + MAP_SUFFIX));
+            return compiled;
+        }
+        byte[] source = null;
+        for(int attempt = 0; source == null; attempt++) {
+            Path file = fetch(date);
+            try {
+                source = Files.readAllBytes(file);
+            } catch (NoSuchFileException e) {
+                //evicted by another thread or process since it was fetched, fetch it once more
+                if(attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(source));
+        Path compiledTmp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            PgMapFile.write(stations, sha256(source), compiledTmp);
+            synchronized(this) {
+                Files.move(compiledTmp, compiled, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                evict(key);
+            }
+        } finally {
+            Files.deleteIfExists(compiledTmp);
+        }
+        return compiled;
+    }
+
+    private String readDigest(String key) {
+        try {
+            return new String(Files.readAllBytes(directory.resolve(key + DIGEST_SUFFIX)), StandardCharsets.US_ASCII).trim();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            //recency is only a hint for eviction
+        }
+    }
+
+    /**
+     * <p>
+     *     Key of a date in the cache. Day and month are zero padded so
+     *     that "9" and "09" refer to the same map.
+     * </p>
+     * @param date array of day, month and year
+     * @return String key in the form yyyy-mm-dd
+     */
+    static String key(String[] date) {
+        return String.format("%04d-%02d-%02d", Integer.parseInt(date[2]), Integer.parseInt(date[1]), Integer.parseInt(date[0]));
+    }
+
+    String mapUrl(String[] date) {
+        return String.format("%s/%s/%s/%s/powergrabmap.geojson", serverUrl, date[2], date[1], date[0]);
+    }
+
+    /**
+     * <p>
+     *     Checks a cached map against its digest, reading it as a stream.
+     *     Entries that are incomplete or corrupted are deleted.
+     *     A successful check marks the map as the most recently used one.
+     * </p>
+     * @param key date key of the map
+     * @return Path of the map, or null if there is no intact entry
+     */
+    private Path verified(String key) throws IOException {
+        Path mapFile = directory.resolve(key + MAP_SUFFIX);
+        Path digestFile = directory.resolve(key + DIGEST_SUFFIX);
+        if(!Files.exists(mapFile) || !Files.exists(digestFile)) {
+            return null;
+        }
+        String actual;
+        String expected = readDigest(key);
+        try(InputStream in = Files.newInputStream(mapFile)) {
+            actual = sha256(in, null);
+        } catch (IOException e) {
+            //the entry may have been evicted by another process in between
+            return null;
+        }
+        if(expected == null) {
+            return null;
+        }
+        if(!actual.equalsIgnoreCase(expected)) {
+            Files.deleteIfExists(mapFile);
+            Files.deleteIfExists(digestFile);
+            return null;
+        }
+        touch(mapFile);
+        return mapFile;
+    }
+
+    /**
+     * <p>
+     *     Stores a map in the cache, see <code>store(String, InputStream)</code>.
+     * </p>
+     * @param key date key of the map
+     * @param content GeoJSON bytes of the map
+     * @return Path of the stored map
+     */
+    Path store(String key, byte[] content) throws IOException {
+        return store(key, new ByteArrayInputStream(content));
+    }
+
+    /**
+     * <p>
+     *     Stores a map in the cache. The content is streamed to a temporary
+     *     file while its digest is calculated, and both files are then moved
+     *     into place, so a reader never sees a half-written map. The old
+     *     digest is removed first and the new one is moved last, which makes
+     *     the entry valid only once the map itself is complete.
+     * </p>
+     * @param key date key of the map
+     * @param content stream with the GeoJSON map, it is read to its end
+     * @return Path of the stored map
+     */
+    Path store(String key, InputStream content) throws IOException {
+        Files.createDirectories(directory);
+        Path mapTmp = Files.createTempFile(directory, key, ".tmp");
+        Path digestTmp = Files.createTempFile(directory, key, ".tmp");
+        Path mapFile = directory.resolve(key + MAP_SUFFIX);
+        try {
+            String digest;
+            try(OutputStream out = Files.newOutputStream(mapTmp)) {
+                digest = sha256(content, out);
+            }
+            Files.write(digestTmp, digest.getBytes(StandardCharsets.US_ASCII));
+            synchronized(this) {
+                Path digestFile = directory.resolve(key + DIGEST_SUFFIX);
+                //without a digest the old entry is only a miss for readers, not a corrupt map
+                Files.deleteIfExists(digestFile);
+                Files.move(mapTmp, mapFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(digestTmp, digestFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                evict(key);
+            }
+        } finally {
+            Files.deleteIfExists(mapTmp);
+            Files.deleteIfExists(digestTmp);
+        }
+        return mapFile;
+    }
+
+    /**
+     * <p>
+     *     Deletes the least recently used maps, together with their digests,
+     *     compiled files and paths, until the size of the cache is under its cap.
+     *     The map that was just stored is never evicted.
+     * </p>
+     * @param keep key of the map that must stay in the cache
+     */
+    private void evict(String keep) throws IOException {
+        List<String> keys = new ArrayList<>();
+        List<FileTime> times = new ArrayList<>();
+        long total = 0;
+        try(DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + MAP_SUFFIX)) {
+            for(Path p : entries) {
+                String name = p.getFileName().toString();
+                String key = name.substring(0, name.length() - MAP_SUFFIX.length());
+                keys.add(key);
+                times.add(Files.getLastModifiedTime(p));
+                total += entrySize(key);
+            }
+        }
+        while(total > maxBytes && !keys.isEmpty()) {
+            int oldest = 0;
+            for(int i = 1; i < keys.size(); i++) {
+                if(times.get(i).compareTo(times.get(oldest)) < 0) {
+                    oldest = i;
+                }
+            }
+            String victim = keys.remove(oldest);
+            times.remove(oldest);
+            if(victim.equals(keep)) {
+                continue;
+            }
+            total -= entrySize(victim);
+            Files.deleteIfExists(directory.resolve(victim + DIGEST_SUFFIX));
+            Files.deleteIfExists(directory.resolve(victim + COMPILED_SUFFIX));
+            Files.deleteIfExists(directory.resolve(victim + PATHS_SUFFIX));
+            Files.deleteIfExists(directory.resolve(victim + MAP_SUFFIX));
+        }
+    }
+
+    private long entrySize(String key) throws IOException {
+        long size = 0;
+        for(String suffix : new String[]{MAP_SUFFIX, DIGEST_SUFFIX, COMPILED_SUFFIX, PATHS_SUFFIX}) {
+            Path file = directory.resolve(key + suffix);
+            if(Files.exists(file)) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * <p>
+     *     Downloads the map of a given date from the map server
+     *     straight into the cache.
+     * </p>
+     * @param key date key of the map
+     * @param date array of day, month and year
+     * @return Path of the downloaded map in the cache
+     * @throws FileNotFoundException if the server has no map for that date
+     * @throws IOException if the server can't be reached or doesn't return the map
+     */
+    private Path download(String key, String[] date) throws IOException {
+        URL mapUrl = new URL(mapUrl(date));
+        HttpURLConnection conn = (HttpURLConnection) mapUrl.openConnection();
+        conn.setReadTimeout(10000);
+        conn.setConnectTimeout(15000);
+        conn.setRequestMethod("GET");
+        conn.setDoInput(true);
+        conn.connect();
+        try {
+            if(conn.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+                throw new FileNotFoundException("There is no map at " + mapUrl);
+            }
+            if(conn.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Map server returned " + conn.getResponseCode() + " for " + mapUrl);
+            }
+            try(InputStream in = conn.getInputStream()) {
+                return store(key, in);
+            }
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    static String sha256(byte[] content) throws IOException {
+        return sha256(new ByteArrayInputStream(content), null);
+    }
+
+    /**
+     * <p>
+     *     Calculates the SHA-256 digest of a stream, copying it to another
+     *     stream on the way if one is given.
+     * </p>
+     * @param in stream which is read to its end
+     * @param copy stream where the content is copied, or null
+     * @return hexadecimal digest of the content
+     */
+    private static String sha256(InputStream in, OutputStream copy) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        byte[] buffer = new byte[8192];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            if(copy != null) {
+                copy.write(buffer, 0, read);
+            }
+        }
+        StringBuilder hex = new StringBuilder();
+        for(byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,147 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * <h1>
+ *     Downloads many daily maps into a MapCache at once.
+ * </h1>
+ * <p>
+ *     Maps are fetched on a fixed pool of threads, so there are never more
+ *     requests in flight than there are threads. A failed download is tried
+ *     again after a pause which doubles with every attempt, except when the
+ *     server has no map for that day. Requests for a date that is already
+ *     being fetched share the download that is in progress.
+ * </p>
+ * <p>
+ *     The prefetcher implements AutoCloseable interface, which is used to
+ *     stop its threads.
+ * </p>
+ */
+public class MapPrefetcher implements AutoCloseable {
+    private final MapCache mapCache;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<String, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param mapCache cache where the maps are stored
+     * @param maxInFlight maximal number of maps that are downloaded at the same time
+     * @param maxAttempts number of times a map is tried before it counts as failed
+     * @param initialBackoffMillis pause before the second attempt, every next pause is twice as long
+     */
+    public MapPrefetcher(MapCache mapCache, int maxInFlight, int maxAttempts, long initialBackoffMillis) {
+        this.mapCache = mapCache;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxInFlight), runnable -> {
+            Thread thread = new Thread(runnable, "map-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <p>
+     *     Starts fetching the map of a given date, unless it is already
+     *     being fetched, in which case the same download is returned.
+     * </p>
+     * @param date array of day, month and year
+     * @return CompletableFuture completed with the Path of the cached map
+     */
+    public CompletableFuture<Path> prefetch(String[] date) {
+        String key = MapCache.key(date);
+        CompletableFuture<Path> created = new CompletableFuture<>();
+        CompletableFuture<Path> existing = inFlight.putIfAbsent(key, created);
+        if(existing != null) {
+            return existing;
+        }
+        executor.execute(() -> {
+            try {
+                created.complete(fetchWithRetries(date));
+            } catch (Exception e) {
+                created.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, created);
+            }
+        });
+        return created;
+    }
+
+    /**
+     * <p>
+     *     Fetches all maps from one date to another (both included) and waits
+     *     until every one of them is either cached or has failed.
+     * </p>
+     * @param from first date of the range
+     * @param to last date of the range
+     * @return Report with the cached maps and the failures, by date key
+     */
+    public Report prefetch(LocalDate from, LocalDate to) {
+        List<String> keys = new ArrayList<>();
+        List<CompletableFuture<Path>> downloads = new ArrayList<>();
+        for(LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            String[] date = toDate(day);
+            keys.add(MapCache.key(date));
+            downloads.add(prefetch(date));
+        }
+        Report report = new Report();
+        for(int i = 0; i < keys.size(); i++) {
+            try {
+                report.cached.put(keys.get(i), downloads.get(i).join());
+            } catch (CompletionException e) {
+                report.failed.put(keys.get(i), e.getCause());
+            }
+        }
+        return report;
+    }
+
+    static String[] toDate(LocalDate day) {
+        return new String[]{String.format("%02d", day.getDayOfMonth()), String.format("%02d", day.getMonthValue()),
+                String.valueOf(day.getYear())};
+    }
+
+    private Path fetchWithRetries(String[] date) throws IOException, InterruptedException {
+        long backoff = initialBackoffMillis;
+        for(int attempt = 1; ; attempt++) {
+            try {
+                return mapCache.fetch(date);
+            } catch (FileNotFoundException e) {
+                //there is no such map (or the cache is offline), trying again won't help
+                throw e;
+            } catch (IOException e) {
+                if(attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+            Thread.sleep(backoff);
+            backoff *= 2;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Outcome of fetching a range of dates.
+     */
+    public static class Report {
+        public final Map<String, Path> cached = new TreeMap<>();
+        public final Map<String, Throwable> failed = new TreeMap<>();
+    }
+}
@@ -0,0 +1,412 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * <h1>
+ *     Chooses which lighthouses the stateful drone visits within its moves.
+ * </h1>
+ * <p>
+ *     The drone is scored by the coins it collects, not by the lighthouses
+ *     it visits, and it only has 250 moves. The planner searches for the
+ *     tour with the most coins whose moves, counted as the TourPlanner does
+ *     (from the start and between lighthouses, read from the StationMatrix),
+ *     fit in the limit, which is the orienteering problem.
+ * </p>
+ * <p>
+ *     The search is a depth-first branch and bound. At every tour it bounds
+ *     the coins which could still be added: each lighthouse left costs at
+ *     least the fewest moves of any leg into it, so the bound is the
+ *     fractional knapsack of the lighthouses left over the moves left, and
+ *     a tour whose bound doesn't beat the best tour found so far, the
+ *     incumbent, is not extended. Extensions are tried in the order of their
+ *     coins per move, so good tours are found early.
+ * </p>
+ * <p>
+ *     The first lighthouse of the tour splits the search into parts, which
+ *     are searched in parallel on a ForkJoinPool, a round of parts at a
+ *     time. The incumbent starts as the part of the given tour within the
+ *     limit, every part of a round starts from the incumbent of the round,
+ *     and once the round is over the best tours of its parts are offered in
+ *     the order of the parts. Tours with the same coins are told apart by
+ *     their moves and then by their lighthouses in order, so the plan is the
+ *     same whatever the number of threads and whichever part finishes first.
+ *     When the time budget runs out the best tour found is returned together
+ *     with the gap between it and the bounds of the parts which were not
+ *     searched to the end, which is 0 when the tour is known to be the best
+ *     one.
+ * </p>
+ */
+final class OrienteeringPlanner {
+    private static final double EPSILON = 1e-9;
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+    //parts searched from the same incumbent, whatever the number of threads
+    private static final int ROUND = 16;
+
+    private final long budgetNanos;
+    private final int moveLimit;
+    private final ForkJoinPool pool;
+
+    //statistics of the last plan
+    double initialCoins;
+    double plannedCoins;
+    int plannedMoves;
+    double upperBound;
+    double gap;
+    long nodes;
+    boolean timedOut;
+
+    //state of the plan being searched, candidates are the lighthouses with coins, numbered from 0
+    private StationMatrix matrix;
+    private int candidates;
+    private int[] node;
+    private int[] startMoves;
+    private int[] cheapestLeg;
+    private double[] coins;
+    private int[] byRatio;
+    private long deadline;
+    private final AtomicLong nodeCount = new AtomicLong();
+    private volatile boolean outOfTime;
+    //the incumbent, only changed in offer between the rounds
+    private double bestCoins;
+    private int bestMoves;
+    private int[] bestTour;
+
+    /**
+     * @param budgetNanos time after which the planner returns the best tour it has
+     * @param moveLimit moves a tour may take
+     * @param pool ForkJoinPool on which the parts are searched
+     */
+    OrienteeringPlanner(long budgetNanos, int moveLimit, ForkJoinPool pool) {
+        this.budgetNanos = budgetNanos;
+        this.moveLimit = moveLimit;
+        this.pool = pool;
+    }
+
+    /**
+     * <p>
+     *     Creates the planner configured by the system property
+     *     <code>powergrab.orienteering.budgetMillis</code> (0, the default, turns it off),
+     *     searching on the common ForkJoinPool.
+     * </p>
+     * @return planner, or null if it is turned off
+     */
+    static OrienteeringPlanner fromSystemProperties() {
+        long budgetMillis = Long.getLong("powergrab.orienteering.budgetMillis", 0);
+        return budgetMillis > 0 ? new OrienteeringPlanner(budgetMillis * 1_000_000L, TourPlanner.MOVE_LIMIT, ForkJoinPool.commonPool()) : null;
+    }
+
+    /**
+     * <p>
+     *     Searches for the tour with the most coins within the move limit.
+     * </p>
+     * @param gameStateMap map of the game, the coins of its stations are the ones the tour is scored with
+     * @param startLatitude latitude where the drone starts the tour
+     * @param startLongitude longitude where the drone starts the tour
+     * @param tour indices of lighthouses in the order they are visited, the first incumbent
+     * @return the lighthouses of the best tour found, followed by the other lighthouses
+     *         of the given tour in their order, in case the drone has moves left
+     * @throws IllegalArgumentException if some station of the tour is not a lighthouse
+     */
+    int[] plan(GameStateMap gameStateMap, double startLatitude, double startLongitude, int[] tour) {
+        deadline = System.nanoTime() + budgetNanos;
+        outOfTime = false;
+        nodeCount.set(0);
+        readCandidates(gameStateMap, startLatitude, startLongitude, tour);
+
+        //the incumbent starts as the part of the tour within the limit
+        int[] given = new int[candidates];
+        int length = 0;
+        int moves = 0;
+        double reached = 0;
+        for(int k = 0; k < candidates; k++) {
+            int leg = k == 0 ? startMoves[k] : matrix.moves(node[k - 1], node[k]);
+            if(moves + leg > moveLimit) {
+                break;
+            }
+            moves += leg;
+            reached += coins[k];
+            given[length++] = k;
+        }
+        bestTour = Arrays.copyOf(given, length);
+        bestCoins = reached;
+        bestMoves = moves;
+        initialCoins = reached;
+
+        //the parts of the search, the best bounds first
+        boolean[] visited = new boolean[candidates];
+        Integer[] parts = IntStream.range(0, candidates).filter(c -> startMoves[c] <= moveLimit).boxed().toArray(Integer[]::new);
+        double[] partBound = new double[candidates];
+        for(int c : parts) {
+            visited[c] = true;
+            partBound[c] = coins[c] + bound(moveLimit - startMoves[c], visited);
+            visited[c] = false;
+        }
+        Arrays.sort(parts, (a, b) -> Double.compare(partBound[b], partBound[a]));
+        boolean[] finished = new boolean[candidates];
+        for(int first = 0; first < parts.length; first += ROUND) {
+            List<Callable<Search>> round = new ArrayList<>();
+            for(int k = first; k < Math.min(parts.length, first + ROUND); k++) {
+                int c = parts[k];
+                if(partBound[c] <= bestCoins + EPSILON) {
+                    finished[c] = true;
+                    continue;
+                }
+                round.add(() -> {
+                    Search search = new Search();
+                    search.visit(c, startMoves[c]);
+                    search.finished = search.extend();
+                    return search;
+                });
+            }
+            try {
+                for(Future<Search> part : pool.invokeAll(round)) {
+                    Search search = part.get();
+                    finished[search.tour[0]] = search.finished;
+                    offer(search.bestTour, search.bestTour.length, search.bestCoins, search.bestMoves);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while searching the tours", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("A part of the search failed", e.getCause());
+            }
+        }
+
+        upperBound = bestCoins;
+        for(int c : parts) {
+            if(!finished[c]) {
+                upperBound = Math.max(upperBound, partBound[c]);
+            }
+        }
+        timedOut = outOfTime;
+        nodes = nodeCount.get();
+        plannedCoins = bestCoins;
+        plannedMoves = bestMoves;
+        gap = upperBound > 0 ? (upperBound - bestCoins) / upperBound : 0;
+
+        int[] result = new int[tour.length];
+        boolean[] planned = new boolean[candidates];
+        int k = 0;
+        for(int c : bestTour) {
+            result[k++] = matrix.station(node[c]);
+            planned[c] = true;
+        }
+        for(int c = 0; c < candidates; c++) {
+            if(!planned[c]) {
+                result[k++] = matrix.station(node[c]);
+            }
+        }
+        //lighthouses of the tour without coins
+        for(int station : tour) {
+            if(gameStateMap.coins(station) <= 0) {
+                result[k++] = station;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return statistics of the last plan
+     */
+    @Override
+    public String toString() {
+        return String.format("%f coins in %d moves (from %f), bound %f, gap %f%s, %d nodes",
+                plannedCoins, plannedMoves, initialCoins, upperBound, gap, timedOut ? " (timed out)" : "", nodes);
+    }
+
+    /**
+     * <p>
+     *     Reads the lighthouses of the tour which have coins as candidates,
+     *     in the order of the tour, and the cheapest leg into each of them.
+     * </p>
+     */
+    private void readCandidates(GameStateMap gameStateMap, double startLatitude, double startLongitude, int[] tour) {
+        StationTable stations = gameStateMap.stations;
+        matrix = StationMatrix.of(stations);
+        node = new int[tour.length];
+        startMoves = new int[tour.length];
+        coins = new double[tour.length];
+        candidates = 0;
+        for(int station : tour) {
+            int n = matrix.node(station);
+            if(n == -1) {
+                throw new IllegalArgumentException("Station " + station + " of the tour is not a lighthouse");
+            }
+            if(gameStateMap.coins(station) <= 0) {
+                continue;
+            }
+            node[candidates] = n;
+            startMoves[candidates] = StationMatrix.moves(stations.latitude[station] - startLatitude,
+                    stations.longitude[station] - startLongitude);
+            coins[candidates] = gameStateMap.coins(station);
+            candidates++;
+        }
+        cheapestLeg = new int[candidates];
+        for(int c = 0; c < candidates; c++) {
+            int cheapest = startMoves[c];
+            for(int from = 0; from < candidates; from++) {
+                if(from != c) {
+                    cheapest = Math.min(cheapest, matrix.moves(node[from], node[c]));
+                }
+            }
+            cheapestLeg[c] = cheapest;
+        }
+        //coins per move of the cheapest leg, the order of the fractional knapsack, lighthouses with a leg of 0 moves first
+        byRatio = IntStream.range(0, candidates).boxed()
+                .sorted((a, b) -> Double.compare(coins[b] * cheapestLeg[a], coins[a] * cheapestLeg[b]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return most coins the candidates which were not visited could add within the moves left
+     */
+    private double bound(int movesLeft, boolean[] visited) {
+        double added = 0;
+        int left = movesLeft;
+        for(int c : byRatio) {
+            if(visited[c] || cheapestLeg[c] > movesLeft) {
+                continue;
+            }
+            if(cheapestLeg[c] <= left) {
+                left -= cheapestLeg[c];
+                added += coins[c];
+            }
+            else {
+                return added + coins[c] * left / cheapestLeg[c];
+            }
+        }
+        return added;
+    }
+
+    /**
+     * <p>
+     *     Keeps the best tour of a part if it is better than the incumbent.
+     * </p>
+     */
+    private void offer(int[] tour, int length, double reached, int moves) {
+        if(isBetter(tour, length, reached, moves, bestTour, bestCoins, bestMoves)) {
+            bestTour = Arrays.copyOf(tour, length);
+            bestMoves = moves;
+            bestCoins = reached;
+        }
+    }
+
+    /**
+     * @return true if a tour has more coins than the best one, or the same coins in fewer moves,
+     *         or the same coins and moves and its lighthouses come first in order
+     */
+    private static boolean isBetter(int[] tour, int length, double reached, int moves, int[] best, double bestCoins, int bestMoves) {
+        if(reached > bestCoins + EPSILON || reached < bestCoins - EPSILON) {
+            return reached > bestCoins;
+        }
+        if(moves != bestMoves) {
+            return moves < bestMoves;
+        }
+        for(int k = 0; k < length && k < best.length; k++) {
+            if(tour[k] != best[k]) {
+                return tour[k] < best[k];
+            }
+        }
+        return length < best.length;
+    }
+
+    /**
+     * <p>
+     *     One part of the search, the tour it is extending, the order in
+     *     which the extensions of each of its lengths are tried and the best
+     *     tour it found, which starts as the incumbent of its round.
+     * </p>
+     */
+    private final class Search {
+        private final int[] tour = new int[candidates];
+        private final boolean[] visited = new boolean[candidates];
+        private final long[][] extensions = new long[candidates][];
+        private int length;
+        private int moves;
+        private double reached;
+        private int counted;
+        private int[] bestTour = OrienteeringPlanner.this.bestTour;
+        private double bestCoins = OrienteeringPlanner.this.bestCoins;
+        private int bestMoves = OrienteeringPlanner.this.bestMoves;
+        //false if the budget ran out before the part was searched to the end
+        private boolean finished;
+
+        void visit(int c, int leg) {
+            tour[length++] = c;
+            visited[c] = true;
+            moves += leg;
+            reached += coins[c];
+        }
+
+        void leave(int leg) {
+            int c = tour[--length];
+            visited[c] = false;
+            moves -= leg;
+            reached -= coins[c];
+        }
+
+        /**
+         * <p>
+         *     Tries every extension of the tour which fits in the limit and
+         *     whose bound beats the incumbent.
+         * </p>
+         * @return false if the budget ran out before all of them were tried
+         */
+        boolean extend() {
+            if(++counted == CLOCK_CHECK_INTERVAL) {
+                nodeCount.addAndGet(counted);
+                counted = 0;
+                if(System.nanoTime() - deadline > 0) {
+                    outOfTime = true;
+                }
+            }
+            if(outOfTime) {
+                return false;
+            }
+            if(reached >= bestCoins - EPSILON && isBetter(tour, length, reached, moves, bestTour, bestCoins, bestMoves)) {
+                bestTour = Arrays.copyOf(tour, length);
+                bestCoins = reached;
+                bestMoves = moves;
+            }
+            if(reached + bound(moveLimit - moves, visited) <= bestCoins + EPSILON) {
+                return true;
+            }
+            int at = tour[length - 1];
+            if(extensions[length] == null) {
+                extensions[length] = new long[candidates];
+            }
+            //coins per move as a float, whose bits sort as it does, and the candidate
+            long[] order = extensions[length];
+            int count = 0;
+            for(int c = 0; c < candidates; c++) {
+                if(!visited[c] && moves + matrix.moves(node[at], node[c]) <= moveLimit) {
+                    float ratio = (float) (coins[c] / (matrix.moves(node[at], node[c]) + 1));
+                    order[count++] = (long) Float.floatToIntBits(ratio) << 32 | c;
+                }
+            }
+            Arrays.sort(order, 0, count);
+            boolean finished = true;
+            for(int k = count - 1; k >= 0 && finished; k--) {
+                int c = (int) order[k];
+                int leg = matrix.moves(node[at], node[c]);
+                visit(c, leg);
+                finished = extend();
+                leave(leg);
+            }
+            if(length == 1) {
+                nodeCount.addAndGet(counted);
+                counted = 0;
+            }
+            return finished;
+        }
+    }
+}
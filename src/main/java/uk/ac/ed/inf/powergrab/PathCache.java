@@ -0,0 +1,252 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>
+ *     Paths between the stations of a map, kept from one run to the next.
+ * </h1>
+ * <p>
+ *     A path is the moves a drone took from the range of one station to the
+ *     range of another, stored two directions to a byte under the pair of
+ *     stations. The paths of a map are kept in the map cache directory
+ *     (<code>yyyy-mm-dd.pgpaths</code>), so every run on that date, whatever
+ *     its seed and start, can replay the paths found by the runs before it.
+ *     The layout of the file (big-endian) is:
+ * </p>
+ * <pre>
+ *     header   magic "PGPT", version (short), 2 bytes of padding,
+ *              fingerprint of the stations (long), path count (int)
+ *     paths    from station, to station (ints), number of moves (short),
+ *              ordinals of the directions, two to a byte, high half first
+ * </pre>
+ * <p>
+ *     The fingerprint is computed from the positions and kinds of the
+ *     stations, which are all a path depends on, and a file with another
+ *     fingerprint is ignored. A path doesn't start at the same point in
+ *     every run, so it is a suggestion rather than a fact: the drone checks
+ *     it before it follows it (see StatefulDrone).
+ * </p>
+ * <p>
+ *     Games on the same StationTable in one JVM share one PathCache, which
+ *     is safe to use from several threads. The cache keeps no reference to
+ *     the table, so it is dropped together with the map once no game uses
+ *     it any more. Saving merges the paths of the file
+ *     with the ones found since it was read, and replaces the file at once,
+ *     so runs in other JVMs only ever lose each other's newest paths.
+ * </p>
+ */
+final class PathCache {
+    static final int MAGIC = 0x50475054;
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 20;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final Map<StationTable, PathCache> OPEN = new WeakHashMap<>();
+
+    final Path file;
+    private final long fingerprint;
+    private final ConcurrentHashMap<Long, byte[]> paths = new ConcurrentHashMap<>();
+    private volatile boolean changed;
+
+    //paths which were followed and paths which had to be planned, over all games which used the cache
+    final AtomicInteger hits = new AtomicInteger();
+    final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * <p>
+     *     Creates the cache of a map, with the paths of the file if it has any.
+     * </p>
+     * @param file .pgpaths file of the map, which doesn't need to exist
+     * @param stations StationTable of the map
+     */
+    PathCache(Path file, StationTable stations) {
+        this.file = file;
+        this.fingerprint = fingerprint(stations);
+        read(file, paths);
+    }
+
+    /**
+     * <p>
+     *     Returns the cache of the map of a date in the directory of the map
+     *     cache the map was loaded from, when the system property
+     *     <code>powergrab.pathcache</code> is true.
+     * </p>
+     * @param mapCache cache the map was loaded from
+     * @param date array of day, month and year as given on the command line
+     * @param stations StationTable of the map
+     * @return PathCache shared by the games on that map, or null if it is turned off
+     */
+    static PathCache fromSystemProperties(MapCache mapCache, String[] date, StationTable stations) {
+        if(!Boolean.getBoolean("powergrab.pathcache")) {
+            return null;
+        }
+        return of(mapCache.directory().resolve(MapCache.key(date) + MapCache.PATHS_SUFFIX), stations);
+    }
+
+    /**
+     * @return cache of the stations shared by the whole JVM, read from the file the first time it is asked for
+     */
+    static PathCache of(Path file, StationTable stations) {
+        synchronized(OPEN) {
+            PathCache cache = OPEN.get(stations);
+            if(cache == null || !cache.file.equals(file)) {
+                cache = new PathCache(file, stations);
+                OPEN.put(stations, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @return moves from the range of one station to the range of another, or null if there is no such path
+     */
+    Direction[] get(int from, int to) {
+        byte[] packed = paths.get(key(from, to));
+        if(packed == null) {
+            return null;
+        }
+        Direction[] path = new Direction[(packed[0] & 0xFF) << 8 | (packed[1] & 0xFF)];
+        for(int k = 0; k < path.length; k++) {
+            int pair = packed[2 + (k >>> 1)];
+            path[k] = DIRECTIONS[(k & 1) == 0 ? (pair >>> 4) & 0xF : pair & 0xF];
+        }
+        return path;
+    }
+
+    /**
+     * <p>
+     *     Keeps a path between two stations, unless there already is one.
+     * </p>
+     */
+    void put(int from, int to, Direction[] path) {
+        byte[] packed = new byte[2 + (path.length + 1) / 2];
+        packed[0] = (byte) (path.length >>> 8);
+        packed[1] = (byte) path.length;
+        for(int k = 0; k < path.length; k++) {
+            int ordinal = path[k].ordinal();
+            packed[2 + (k >>> 1)] |= (k & 1) == 0 ? ordinal << 4 : ordinal;
+        }
+        if(paths.putIfAbsent(key(from, to), packed) == null) {
+            changed = true;
+        }
+    }
+
+    int size() {
+        return paths.size();
+    }
+
+    /**
+     * <p>
+     *     Writes the paths to the file, together with the paths other runs
+     *     wrote to it since it was read, if there is anything new.
+     * </p>
+     * @throws IOException if the file can't be written
+     */
+    synchronized void save() throws IOException {
+        if(!changed) {
+            return;
+        }
+        changed = false;
+        Map<Long, byte[]> merged = new HashMap<>();
+        read(file, merged);
+        for(Map.Entry<Long, byte[]> path : merged.entrySet()) {
+            paths.putIfAbsent(path.getKey(), path.getValue());
+        }
+        merged.putAll(paths);
+        int size = HEADER_SIZE;
+        for(byte[] packed : merged.values()) {
+            size += 8 + packed.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(fingerprint).putInt(merged.size());
+        for(Map.Entry<Long, byte[]> path : merged.entrySet()) {
+            buffer.putInt((int) (path.getKey() >>> 32)).putInt((int) (long) path.getKey()).put(path.getValue());
+        }
+        buffer.flip();
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try(FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while(buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * <p>
+     *     Reads the paths of a file into a map. A file which is missing, is
+     *     not complete or belongs to other stations adds nothing.
+     * </p>
+     */
+    private void read(Path file, Map<Long, byte[]> into) {
+        ByteBuffer buffer;
+        try {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        } catch (IOException e) {
+            return;
+        }
+        if(buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            return;
+        }
+        buffer.getShort();
+        if(buffer.getLong() != fingerprint) {
+            return;
+        }
+        int count = buffer.getInt();
+        Map<Long, byte[]> read = new HashMap<>();
+        for(int k = 0; k < count; k++) {
+            if(buffer.remaining() < 10) {
+                return;
+            }
+            long key = key(buffer.getInt(), buffer.getInt());
+            int moves = (buffer.get(buffer.position()) & 0xFF) << 8 | (buffer.get(buffer.position() + 1) & 0xFF);
+            if(buffer.remaining() < 2 + (moves + 1) / 2) {
+                return;
+            }
+            byte[] packed = new byte[2 + (moves + 1) / 2];
+            buffer.get(packed);
+            read.put(key, packed);
+        }
+        into.putAll(read);
+    }
+
+    private static long key(int from, int to) {
+        return (long) from << 32 | (to & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return hash of the positions and kinds of the stations
+     */
+    static long fingerprint(StationTable stations) {
+        long hash = stations.size;
+        for(int i = 0; i < stations.size; i++) {
+            hash = mix(hash ^ Double.doubleToLongBits(stations.latitude[i]));
+            hash = mix(hash ^ Double.doubleToLongBits(stations.longitude[i]));
+            hash = mix(hash ^ stations.kind[i]);
+        }
+        return hash;
+    }
+
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,252 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Plans the moves of a drone to a target around the danger stations.
+ * </h1>
+ * <p>
+ *     A* search over the points of the Lattice of a drone. Each move costs
+ *     one, and a point can't be moved to if it is outside of the play area
+ *     or if the closest station in charging range of it is a danger station,
+ *     as marked in the HazardRaster of the map, which is the rule the drones
+ *     use to decide if a move is safe. The search stops at the first point
+ *     within charging range of the target, and the estimate of the moves
+ *     left from a point is the number of moves to the target with nothing in
+ *     the way, <code>StationMatrix.moves</code>, so the path found has the
+ *     fewest moves.
+ * </p>
+ * <p>
+ *     The points found by the search are kept in an open-addressing table
+ *     of packed Lattice longs, and the open points in a binary heap of
+ *     primitive arrays, all allocated once by the constructor. A search
+ *     which would need more than the maximal number of points gives up, so
+ *     a planner never uses more memory than it was created with, and a
+ *     target which can't be reached at all costs at most that many points.
+ * </p>
+ */
+final class PathPlanner {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private final int maxPoints;
+    private final int mask;
+    private final int shift;
+
+    //table of the points of the search, a slot is used if its stamp is the number of the search
+    private final long[] point;
+    private final int[] stamp;
+    private final int[] moves;
+    private final int[] estimate;
+    private final int[] parent;
+    private final byte[] direction;
+    private final boolean[] closed;
+    private int search;
+    private int used;
+
+    //binary heap of open slots, ordered by moves plus estimate and then by estimate
+    private final long[] heapKey;
+    private final int[] heapSlot;
+    private int heapSize;
+
+    private int[] nearby = new int[0];
+
+    //statistics of the last search
+    int expanded;
+    boolean exhausted;
+
+    /**
+     * @param maxPoints most points a search can visit before it gives up
+     */
+    PathPlanner(int maxPoints) {
+        if(maxPoints < 1) {
+            throw new IllegalArgumentException("A path planner needs at least one point, not " + maxPoints);
+        }
+        this.maxPoints = maxPoints;
+        int capacity = Integer.highestOneBit(maxPoints) << 2;
+        this.mask = capacity - 1;
+        this.shift = 64 - Integer.numberOfTrailingZeros(capacity);
+        this.point = new long[capacity];
+        this.stamp = new int[capacity];
+        this.moves = new int[capacity];
+        this.estimate = new int[capacity];
+        this.parent = new int[capacity];
+        this.direction = new byte[capacity];
+        this.closed = new boolean[capacity];
+        this.heapKey = new long[DIRECTIONS.length * maxPoints + 1];
+        this.heapSlot = new int[heapKey.length];
+    }
+
+    /**
+     * <p>
+     *     Creates the planner configured by the system property
+     *     <code>powergrab.pathplanner.maxPoints</code> (0, the default, turns it off).
+     * </p>
+     * @return planner, or null if it is turned off
+     */
+    static PathPlanner fromSystemProperties() {
+        int maxPoints = Integer.getInteger("powergrab.pathplanner.maxPoints", 0);
+        return maxPoints > 0 ? new PathPlanner(maxPoints) : null;
+    }
+
+    /**
+     * <p>
+     *     Finds the fewest moves from a point to a point within charging range
+     *     of a target, without moving out of the play area or to a point
+     *     where a danger station would be charged from.
+     * </p>
+     * @param gameStateMap map of the game
+     * @param lattice Lattice of the drone
+     * @param start point where the drone is
+     * @param targetLatitude latitude of the target
+     * @param targetLongitude longitude of the target
+     * @return directions of the moves, empty if the target is already in range,
+     *         or null if there is no path within the maximal number of points
+     */
+    Direction[] plan(GameStateMap gameStateMap, Lattice lattice, long start, double targetLatitude, double targetLongitude) {
+        if(nearby.length < gameStateMap.stations.size) {
+            nearby = new int[gameStateMap.stations.size];
+        }
+        if(++search == 0) {
+            Arrays.fill(stamp, 0);
+            search = 1;
+        }
+        used = 0;
+        heapSize = 0;
+        expanded = 0;
+        exhausted = false;
+
+        HazardRaster hazards = HazardRaster.of(gameStateMap);
+        int startSlot = insert(start);
+        moves[startSlot] = 0;
+        estimate[startSlot] = estimate(lattice, start, targetLatitude, targetLongitude);
+        push(startSlot);
+        while(heapSize > 0) {
+            long key = heapKey[0];
+            int slot = pop();
+            if(closed[slot] || (int) (key >>> 32) > moves[slot] + estimate[slot]) {
+                continue;
+            }
+            if(estimate[slot] == 0) {
+                return path(slot);
+            }
+            closed[slot] = true;
+            expanded++;
+            for(Direction d : DIRECTIONS) {
+                long next = Lattice.next(point[slot], d);
+                int nextSlot = find(next);
+                if(nextSlot < 0) {
+                    if(used == maxPoints) {
+                        exhausted = true;
+                        return null;
+                    }
+                    nextSlot = insert(next);
+                    if(isBlocked(gameStateMap, hazards, lattice, next)) {
+                        closed[nextSlot] = true;
+                        continue;
+                    }
+                    estimate[nextSlot] = estimate(lattice, next, targetLatitude, targetLongitude);
+                }
+                else if(closed[nextSlot] || moves[nextSlot] <= moves[slot] + 1) {
+                    continue;
+                }
+                moves[nextSlot] = moves[slot] + 1;
+                parent[nextSlot] = slot;
+                direction[nextSlot] = (byte) d.ordinal();
+                push(nextSlot);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the closest station in charging range of a point is a danger station, or the point is outside of the play area
+     */
+    private boolean isBlocked(GameStateMap gameStateMap, HazardRaster hazards, Lattice lattice, long next) {
+        double lat = lattice.latitude(next);
+        double lon = lattice.longitude(next);
+        return !Position.inPlayArea(lat, lon) || !hazards.isSafe(gameStateMap, lat, lon, nearby);
+    }
+
+    private static int estimate(Lattice lattice, long point, double targetLatitude, double targetLongitude) {
+        return StationMatrix.moves(targetLatitude - lattice.latitude(point), targetLongitude - lattice.longitude(point));
+    }
+
+    private Direction[] path(int slot) {
+        Direction[] path = new Direction[moves[slot]];
+        for(int k = path.length - 1; k >= 0; k--) {
+            path[k] = DIRECTIONS[direction[slot]];
+            slot = parent[slot];
+        }
+        return path;
+    }
+
+    private int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @return slot of a point found by this search, or -1
+     */
+    private int find(long key) {
+        for(int slot = hash(key); stamp[slot] == search; slot = (slot + 1) & mask) {
+            if(point[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int insert(long key) {
+        int slot = hash(key);
+        while(stamp[slot] == search) {
+            slot = (slot + 1) & mask;
+        }
+        stamp[slot] = search;
+        point[slot] = key;
+        closed[slot] = false;
+        used++;
+        return slot;
+    }
+
+    private void push(int slot) {
+        long key = ((long) (moves[slot] + estimate[slot]) << 32) | estimate[slot];
+        int k = heapSize++;
+        while(k > 0) {
+            int up = (k - 1) >>> 1;
+            if(heapKey[up] <= key) {
+                break;
+            }
+            heapKey[k] = heapKey[up];
+            heapSlot[k] = heapSlot[up];
+            k = up;
+        }
+        heapKey[k] = key;
+        heapSlot[k] = slot;
+    }
+
+    private int pop() {
+        int top = heapSlot[0];
+        long key = heapKey[--heapSize];
+        int slot = heapSlot[heapSize];
+        int k = 0;
+        while(true) {
+            int child = 2 * k + 1;
+            if(child >= heapSize) {
+                break;
+            }
+            if(child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) {
+                child++;
+            }
+            if(key <= heapKey[child]) {
+                break;
+            }
+            heapKey[k] = heapKey[child];
+            heapSlot[k] = heapSlot[child];
+            k = child;
+        }
+        heapKey[k] = key;
+        heapSlot[k] = slot;
+        return top;
+    }
+}
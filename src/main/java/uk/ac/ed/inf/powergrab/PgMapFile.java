@@ -0,0 +1,195 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <h1>
+ *     Precompiled binary map format (.pgmap).
+ * </h1>
+ * <p>
+ *     A .pgmap file holds the StationTable of one map, so it can be loaded
+ *     without parsing any GeoJSON. Its layout (big-endian) is:
+ * </p>
+ * <pre>
+ *     header   magic "PGMP", version (short), record size (short),
+ *              station count (int), string table length (int),
+ *              SHA-256 of the GeoJSON it was compiled from (64 ASCII hex digits)
+ *     records  one fixed-width record per station: latitude, longitude,
+ *              coins, power (doubles), kind (byte), 3 bytes of padding,
+ *              offset and length of the id and of the marker colour
+ *              in the string table (ints, colour length is -1 if missing)
+ *     strings  UTF-8 bytes of all ids and colours
+ * </pre>
+ * <p>
+ *     Files are only read through a read-only memory mapping, and the
+ *     records are copied straight into the arrays of a StationTable. Each
+ *     JVM keeps its own table, so what JVMs loading the map of the same date
+ *     share is the pages of the file in the page cache of the system.
+ * </p>
+ */
+class PgMapFile {
+    static final int MAGIC = 0x50474D50;
+    static final short VERSION = 1;
+    static final int RECORD_SIZE = 56;
+    static final int DIGEST_LENGTH = 64;
+    static final int HEADER_SIZE = 16 + DIGEST_LENGTH;
+
+    private PgMapFile() {
+    }
+
+    /**
+     * <p>
+     *     Writes a StationTable to a file in .pgmap format.
+     * </p>
+     * @param stations StationTable of the map
+     * @param sourceDigest SHA-256 of the GeoJSON the table was read from
+     * @param path file which is created or replaced
+     */
+    static void write(StationTable stations, String sourceDigest, Path path) throws IOException {
+        byte[][] ids = new byte[stations.size][];
+        byte[][] colors = new byte[stations.size][];
+        int stringsLength = 0;
+        for(int i = 0; i < stations.size; i++) {
+            ids[i] = stations.id[i].getBytes(StandardCharsets.UTF_8);
+            stringsLength += ids[i].length;
+            if(stations.color[i] != null) {
+                colors[i] = stations.color[i].getBytes(StandardCharsets.UTF_8);
+                stringsLength += colors[i].length;
+            }
+        }
+        byte[] digest = sourceDigest.getBytes(StandardCharsets.US_ASCII);
+        if(digest.length != DIGEST_LENGTH) {
+            throw new IllegalArgumentException("Digest must be " + DIGEST_LENGTH + " hex digits");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + stations.size * RECORD_SIZE + stringsLength);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) RECORD_SIZE)
+                .putInt(stations.size).putInt(stringsLength).put(digest);
+        int stringsStart = HEADER_SIZE + stations.size * RECORD_SIZE;
+        int stringOffset = 0;
+        for(int i = 0; i < stations.size; i++) {
+            int record = HEADER_SIZE + i * RECORD_SIZE;
+            buffer.putDouble(record, stations.latitude[i]);
+            buffer.putDouble(record + 8, stations.longitude[i]);
+            buffer.putDouble(record + 16, stations.coins[i]);
+            buffer.putDouble(record + 24, stations.power[i]);
+            buffer.put(record + 32, stations.kind[i]);
+            buffer.putInt(record + 36, stringOffset);
+            buffer.putInt(record + 40, ids[i].length);
+            buffer.position(stringsStart + stringOffset);
+            buffer.put(ids[i]);
+            stringOffset += ids[i].length;
+            if(colors[i] == null) {
+                buffer.putInt(record + 44, 0);
+                buffer.putInt(record + 48, -1);
+            }
+            else {
+                buffer.putInt(record + 44, stringOffset);
+                buffer.putInt(record + 48, colors[i].length);
+                buffer.put(colors[i]);
+                stringOffset += colors[i].length;
+            }
+        }
+        buffer.rewind();
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    /**
+     * <p>
+     *     Checks that a file is a complete .pgmap compiled from the GeoJSON
+     *     with a given digest. Only the header is read.
+     * </p>
+     * @param path file to check
+     * @param sourceDigest expected SHA-256 of the GeoJSON map
+     * @return true if the file can be loaded in place of that GeoJSON map
+     */
+    static boolean isCompiledFrom(Path path, String sourceDigest) {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if(channel.size() < HEADER_SIZE) {
+                return false;
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if(!hasValidHeader(header, channel.size())) {
+                return false;
+            }
+            byte[] digest = new byte[DIGEST_LENGTH];
+            header.position(16);
+            header.get(digest);
+            return new String(digest, StandardCharsets.US_ASCII).equalsIgnoreCase(sourceDigest);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasValidHeader(ByteBuffer buffer, long fileSize) {
+        if(buffer.getInt(0) != MAGIC || buffer.getShort(4) != VERSION || buffer.getShort(6) != RECORD_SIZE) {
+            return false;
+        }
+        long count = buffer.getInt(8);
+        long stringsLength = buffer.getInt(12);
+        return count >= 0 && stringsLength >= 0 && fileSize == HEADER_SIZE + count * RECORD_SIZE + stringsLength;
+    }
+
+    /**
+     * <p>
+     *     Loads the StationTable stored in a .pgmap file by memory-mapping it.
+     * </p>
+     * @param path .pgmap file
+     * @return StationTable with the stations of the map
+     * @throws IOException if the file can't be read or is not a valid .pgmap file
+     */
+    static StationTable read(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not a .pgmap file");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if(!hasValidHeader(buffer, size)) {
+                throw new IOException(path + " is not a complete .pgmap file");
+            }
+            int count = buffer.getInt(8);
+            int stringsLength = buffer.getInt(12);
+            int stringsStart = HEADER_SIZE + count * RECORD_SIZE;
+            StationTable.Builder builder = new StationTable.Builder();
+            for(int i = 0; i < count; i++) {
+                int record = HEADER_SIZE + i * RECORD_SIZE;
+                String id = string(buffer, stringsStart, stringsLength, buffer.getInt(record + 36), buffer.getInt(record + 40), path);
+                int colorLength = buffer.getInt(record + 48);
+                String color = colorLength == -1 ? null
+                        : string(buffer, stringsStart, stringsLength, buffer.getInt(record + 44), colorLength, path);
+                builder.add(id, buffer.getDouble(record), buffer.getDouble(record + 8),
+                        buffer.getDouble(record + 16), buffer.getDouble(record + 24), buffer.get(record + 32), color);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * @return string at an offset of the string table
+     * @throws IOException if the string is not within the string table
+     */
+    private static String string(ByteBuffer buffer, int stringsStart, int stringsLength, int offset, int length, Path path)
+            throws IOException {
+        if(offset < 0 || length < 0 || (long) offset + length > stringsLength) {
+            throw new IOException(path + " has a string outside of its string table");
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer strings = buffer.duplicate();
+        strings.position(stringsStart + offset);
+        strings.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
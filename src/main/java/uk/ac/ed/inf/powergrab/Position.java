@@ -7,6 +7,11 @@ package uk.ac.ed.inf.powergrab;
  * </h1>
  */
 public class Position {
+	static final double MIN_LATITUDE = 55.942617;
+	static final double MAX_LATITUDE = 55.946233;
+	static final double MIN_LONGITUDE = -3.192473;
+	static final double MAX_LONGITUDE = -3.184319;
+
 	public double latitude;
 	public double longitude;
 
@@ -40,7 +45,20 @@ public class Position {
 	 * @return boolean where True means that positions lies in play area
 	 */
 	public boolean inPlayArea() {
-		return (latitude > 55.942617 && latitude < 55.946233 && longitude < -3.184319 && longitude > -3.192473);
+		return inPlayArea(latitude, longitude);
+	}
+
+	/**
+	 * <p>
+	 *     Same as <code>inPlayArea()</code> for a point that is not a Position,
+	 *     so it can be checked without creating one.
+	 * </p>
+	 * @param latitude latitude of the point
+	 * @param longitude longitude of the point
+	 * @return boolean where True means that the point lies in play area
+	 */
+	static boolean inPlayArea(double latitude, double longitude) {
+		return (latitude > MIN_LATITUDE && latitude < MAX_LATITUDE && longitude < MAX_LONGITUDE && longitude > MIN_LONGITUDE);
 	}
 }
 
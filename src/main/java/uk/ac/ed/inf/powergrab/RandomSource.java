@@ -0,0 +1,39 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * <h1>
+ *     Source of the random choices of a game.
+ * </h1>
+ * <p>
+ *     A game only ever asks for a random index, so it doesn't need to know
+ *     whether the numbers come from a java.util.Random, which is what a
+ *     single game seeded from the command line uses, or from a
+ *     SplittableRandom, which is what many games played at once use.
+ *     A source belongs to one game and is not shared between threads.
+ * </p>
+ */
+interface RandomSource {
+
+    /**
+     * @param bound number of possible values, must be positive
+     * @return random number from 0 (included) to bound (excluded)
+     */
+    int nextInt(int bound);
+
+    /**
+     * @return source drawing from a given Random, or null if it is null
+     */
+    static RandomSource of(Random random) {
+        return random == null ? null : random::nextInt;
+    }
+
+    /**
+     * @return source drawing from a given SplittableRandom, or null if it is null
+     */
+    static RandomSource of(SplittableRandom random) {
+        return random == null ? null : random::nextInt;
+    }
+}
@@ -0,0 +1,189 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <h1>
+ *     Plays the stateless drone on one map with many seeds.
+ * </h1>
+ * <p>
+ *     The stateless drone only differs between seeds in its random moves,
+ *     so playing it with a range of seeds shows how much its score depends
+ *     on luck. Game number i of a sweep draws its random moves from
+ *     <code>new SplittableRandom(firstSeed + i)</code>, which depends on
+ *     nothing but its own seed, and its coins and power are stored at index
+ *     i. The games are shared between the threads in any order, but the
+ *     statistics are computed from the stored results in the order of the
+ *     seeds, so they are the same bit for bit whatever the number of threads.
+ * </p>
+ * <p>
+ *     Games of a sweep don't write any files. The sweep implements
+ *     AutoCloseable interface, which is used to stop its threads.
+ * </p>
+ */
+public class SeedSweep implements AutoCloseable {
+    private final GameStateMap loadedMap;
+    private final Position initialPosition;
+    private final int threads;
+    private final ExecutorService executor;
+
+    /**
+     * @param loadedMap map on which the games are played, it is not changed by them
+     * @param initialPosition Position where the drone starts
+     * @param threads number of games that are played at the same time
+     */
+    public SeedSweep(GameStateMap loadedMap, Position initialPosition, int threads) {
+        this.loadedMap = loadedMap;
+        this.initialPosition = initialPosition;
+        this.threads = Math.max(1, threads);
+        this.executor = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "seed-sweep");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * <p>
+     *     Plays the games of a range of seeds.
+     * </p>
+     * @param firstSeed seed of the first game
+     * @param count number of games, with seeds firstSeed, firstSeed + 1, ...
+     * @return statistics of the coins and power of the games
+     */
+    public Result run(long firstSeed, int count) {
+        if(count < 1) {
+            throw new IllegalArgumentException("A sweep needs at least one game, not " + count);
+        }
+        double[] coins = new double[count];
+        double[] power = new double[count];
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for(int t = 0; t < Math.min(threads, count); t++) {
+            workers.add(executor.submit(() -> {
+                for(int i = next.getAndIncrement(); i < count; i = next.getAndIncrement()) {
+                    StatelessDrone drone = play(new SplittableRandom(firstSeed + i));
+                    coins[i] = drone.coins;
+                    power[i] = drone.power;
+                }
+            }));
+        }
+        try {
+            for(Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the games", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game of the sweep failed", e.getCause());
+        }
+        return new Result(firstSeed, coins, power);
+    }
+
+    /**
+     * <p>
+     *     Plays one stateless game the same way as Game.play, without writing its moves.
+     * </p>
+     */
+    private StatelessDrone play(SplittableRandom random) {
+        GameStateMap gameStateMap = new GameStateMap(loadedMap, RandomSource.of(random));
+        StatelessMapController mapC = new StatelessMapController(gameStateMap, initialPosition);
+        StatelessDrone drone = new StatelessDrone(initialPosition, mapC);
+        while(drone.power > 1.25 && drone.movesCount < 250) {
+            drone.move();
+        }
+        return drone;
+    }
+
+    /**
+     * <h1>
+     *     Statistics of the games of a sweep.
+     * </h1>
+     * <p>
+     *     Percentiles use the nearest-rank method, so each of them is the
+     *     score of one of the games.
+     * </p>
+     */
+    public static class Result {
+        public final long firstSeed;
+        public final Distribution coins;
+        public final Distribution power;
+        /** Seed of the game with the most coins, the smallest one if several games have as many. */
+        public final long bestSeed;
+
+        Result(long firstSeed, double[] coins, double[] power) {
+            this.firstSeed = firstSeed;
+            this.coins = new Distribution(coins);
+            this.power = new Distribution(power);
+            int best = 0;
+            for(int i = 1; i < coins.length; i++) {
+                if(coins[i] > coins[best]) {
+                    best = i;
+                }
+            }
+            this.bestSeed = firstSeed + best;
+        }
+
+        public int count() {
+            return coins.count();
+        }
+    }
+
+    /**
+     * <h1>
+     *     Distribution of coins or power over the games of a sweep.
+     * </h1>
+     */
+    public static class Distribution {
+        private final double[] sorted;
+        public final double mean;
+
+        Distribution(double[] values) {
+            double sum = 0;
+            for(double value : values) {
+                sum += value;
+            }
+            this.mean = sum / values.length;
+            this.sorted = values.clone();
+            Arrays.sort(sorted);
+        }
+
+        public int count() {
+            return sorted.length;
+        }
+
+        public double min() {
+            return sorted[0];
+        }
+
+        public double max() {
+            return sorted[sorted.length - 1];
+        }
+
+        /**
+         * @param p percentile, from 0 (excluded) to 100 (included)
+         * @return smallest value which is at least as large as p percent of the values
+         */
+        public double percentile(double p) {
+            if(!(p > 0 && p <= 100)) {
+                throw new IllegalArgumentException("Percentile must be in (0, 100], not " + p);
+            }
+            int rank = (int) Math.ceil(p / 100 * sorted.length);
+            return sorted[Math.max(rank, 1) - 1];
+        }
+    }
+}
@@ -1,11 +1,7 @@
 package uk.ac.ed.inf.powergrab;
 
-import com.mapbox.geojson.Feature;
-import com.mapbox.geojson.FeatureCollection;
-import com.mapbox.geojson.Geometry;
-import com.mapbox.geojson.Point;
-
 import java.io.FileNotFoundException;
+import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.util.*;
@@ -24,222 +20,353 @@ import java.util.*;
  * </p>
  */
 public class StatefulDrone extends Drone {
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final int BACK = 8;
+    //moves towards the head of the plan without getting closer to it after which it is given up
+    static final int GIVE_UP_MOVES = 16;
 
     GameStateMap gameStateMap;
-    Queue<Feature> planToFollow;
+    TourPlan planToFollow;
     ArrayList<Position> previousPositions;
     Direction lastDirectionUsed;
     PrintWriter pathTxtWriter;
+    private final PrintStream log;
+    private final int[] nearbyStations;
+    private final HazardRaster hazards;
+    //optional choice of the stations of the greedy plan reached within the moves, null to keep all of them
+    private final OrienteeringPlanner orienteering;
+    //optional improvement of the greedy plan, null to follow the greedy plan
+    private final TourPlanner planner;
+    //optional planner of the moves to each station, null to side-step the danger stations
+    private final PathPlanner pathPlanner;
+    private final Direction[] possibleDirections = new Direction[DIRECTIONS.length];
+
+    //state of the way to the head of the plan, kept from one move to the next
+    //direction to the target which is moved in once a red station is side-stepped, or null
+    private Direction pendingDirection;
+    //direction to the target while a red station is side-stepped, or null
+    private Direction avoidedDirection;
+    //sixteenths of a turn from avoidedDirection of the next side step, 4 or -4, or BACK
+    private int sideSectors;
+    //moves of the PathPlanner to the head of the plan and the next of them, or null
+    private Direction[] plannedPath;
+    private int plannedMove;
+    //station charged from last, where the path to the head of the plan starts, or -1
+    private int lastTarget = -1;
+    //head of the plan the progress is tracked for, the closest the drone has been to it and the moves since
+    private int trackedTarget = -1;
+    private double closestToTarget;
+    private int movesWithoutProgress;
+    //stations given up because the drone kept side-stepping around them
+    int givenUp;
+    //optional paths of earlier games on the map, only used with a PathPlanner
+    PathCache pathCache;
 
 
     public StatefulDrone(Position initialPosition, GameStateMap gameStateMap, String file) throws FileNotFoundException, UnsupportedEncodingException {
+        this(initialPosition, gameStateMap, new PrintWriter(file, "UTF-8"), System.out);
+    }
+
+    /**
+     * <p>
+     *     Creates the drone writing its moves to a given writer, which is how
+     *     several games can run at once, each with its own files.
+     * </p>
+     * @param initialPosition position where the drone starts
+     * @param gameStateMap map of the game
+     * @param pathTxtWriter writer of the .txt file with the moves of the drone
+     * @param log stream where each move and the statistics of the plan are also reported, or null to not report them
+     */
+    StatefulDrone(Position initialPosition, GameStateMap gameStateMap, PrintWriter pathTxtWriter, PrintStream log) {
         super(initialPosition);
-        this.planToFollow = new LinkedList<>();
         this.gameStateMap = gameStateMap;
+        this.planToFollow = new TourPlan(gameStateMap);
         previousPositions = new ArrayList<>();
         lastDirectionUsed = null;
+        nearbyStations = new int[gameStateMap.stations.size];
+        hazards = HazardRaster.of(gameStateMap);
+        orienteering = OrienteeringPlanner.fromSystemProperties();
+        planner = TourPlanner.fromSystemProperties();
+        pathPlanner = PathPlanner.fromSystemProperties();
+        this.pathTxtWriter = pathTxtWriter;
+        this.log = log;
         findGamePlan();
-        this.pathTxtWriter = new PrintWriter(file, "UTF-8");
     }
 
     /**
      * <p>
      *     Method used to move the drone -> to play the game with this drone.
-     *     It is called in a loop until the drone make 250 moves or run out of power.
-     *     Each call of a move method means move to the next station in the queue plan,
-     *     so move() runs until the next green station is reached.
+     *     It is called in a loop until the drone is finished, and each call
+     *     makes exactly one move towards the next station in the queue plan.
+     *     What the drone is doing on its way there (side-stepping a red station,
+     *     following the moves of the PathPlanner) is kept in fields, so the next
+     *     call carries on where this one stopped, and the drone can be stopped,
+     *     or interleaved with other drones, after any move.
+     *     Once the plan is empty the drone moves randomly.
      * </p>
      */
-
     public void move() {
-        if(planToFollow.size() == 0){
-            moveRandomly();
+        if(isFinished()) {
             return;
         }
-        Feature target = planToFollow.peek();
-        Point p = (Point) target.geometry();
-        Position targetPosition = new Position(p.coordinates().get(1), p.coordinates().get(0));
-        double distance = gameStateMap.calculateDistance(position, targetPosition);
+        Position prev = position;
+        boolean followed = pathPlanner != null ? moveAlongPlannedPath() : moveTowardsTarget();
+        if(!followed) {
+            moveRandomly();
+        }
+        writeMoveToFile(prev);
+        previousPositions.add(position);
+    }
 
-        while(distance > 0.00025){
-            Direction dir = getDirectionToTarget(target);
-            boolean isSafe = checkSafetyOfDirection(dir);
-            if(!isSafe) {
-                moveToAvoidRedStation(target);
+    /**
+     * @return true if the drone has made 250 moves or doesn't have the power for another one
+     */
+    boolean isFinished() {
+        return movesCount >= 250 || power < 1.25;
+    }
+
+    /**
+     * <p>
+     *     Makes the next move towards the head of the queue plan.
+     *     If the direction to the target is not safe, the drone side-steps the
+     *     red station (see avoidRedStation) and then makes the move it couldn't
+     *     make before. Stations of the plan which are already in range are
+     *     charged from before the move, and the target is charged from as soon
+     *     as a move lands in its range.
+     * </p>
+     * @return false if the plan is empty, in which case no move was made
+     */
+    private boolean moveTowardsTarget() {
+        if(movesWithoutProgress >= GIVE_UP_MOVES) {
+            giveUpTarget();
+        }
+        if(avoidedDirection != null) {
+            avoidRedStation(planToFollow.peek());
+            trackProgress();
+            return true;
+        }
+        Direction dir = pendingDirection;
+        pendingDirection = null;
+        if(dir == null) {
+            while(!planToFollow.isEmpty() && isInRange(planToFollow.peek())) {
+                chargeFromTarget();
             }
-            if(!position.nextPosition(dir).inPlayArea()){
-                double lessSteepAngle = dir.toAnticlockwiseAngle() - 30;
-                dir = gameStateMap.getDirectionFromAngle(lessSteepAngle);
+            if(planToFollow.isEmpty()) {
+                return false;
             }
-            Position prev = position;
-            power -= 1.25;
-            lastDirectionUsed = dir;
-            writeMoveToFile(prev);
-            position = position.nextPosition(dir);
-            previousPositions.add(position);
-            distance = gameStateMap.calculateDistance(position, targetPosition);
-            movesCount++;
+            dir = getDirectionToTarget(planToFollow.peek());
+            if(!checkSafetyOfDirection(dir)) {
+                pendingDirection = dir;
+                avoidedDirection = dir;
+                sideSectors = 4;
+                avoidRedStation(planToFollow.peek());
+                trackProgress();
+                return true;
+            }
+        }
+        if(!lattice.inPlayArea(Lattice.next(point, dir))){
+            //turning 30 degrees clockwise lands in the range of the next direction clockwise
+            dir = dir.rotate(-1);
+        }
+        makeMove(dir);
+        if(isInRange(planToFollow.peek())) {
+            chargeFromTarget();
+        }
+        trackProgress();
+        return true;
+    }
 
+    /**
+     * <p>
+     *     Counts the moves since the drone last got closer to the head of the
+     *     plan. Side-stepping a red station can bring the drone back to where
+     *     it was, over and over, and this count is how that is noticed.
+     * </p>
+     */
+    private void trackProgress() {
+        int target = planToFollow.peek();
+        if(target != trackedTarget) {
+            trackedTarget = target;
+            closestToTarget = Double.POSITIVE_INFINITY;
+            movesWithoutProgress = 0;
+        }
+        if(target == -1) {
+            return;
+        }
+        double distance = gameStateMap.stations.distance(target, position.latitude, position.longitude);
+        if(distance < closestToTarget) {
+            closestToTarget = distance;
+            movesWithoutProgress = 0;
         }
+        else {
+            movesWithoutProgress++;
+        }
+    }
 
-        coins += target.getProperty("coins").getAsDouble();
-        power += target.getProperty("power").getAsDouble();
-        gameStateMap.updateStation(target.getProperty("id").getAsString(), 0, 0);
+    /**
+     * <p>
+     *     Removes the head of the plan, which the drone hasn't got any closer
+     *     to in GIVE_UP_MOVES moves, and drops the side-step towards it, so the
+     *     drone heads for the next station of the plan instead.
+     * </p>
+     */
+    private void giveUpTarget() {
         planToFollow.remove();
+        givenUp++;
+        pendingDirection = null;
+        avoidedDirection = null;
+        trackedTarget = -1;
+        movesWithoutProgress = 0;
     }
 
     /**
      * <p>
-     *     This is a method used to check if moving in a given direction
-     *     is safe for the drone on not.
-     *     Safe means that there isn't any red station reachable at the next
-     *     position after moving in the given direction.
+     *     Makes the next move around the red station that lies in the direction
+     *     to the target. The drone moves at a right angle of that direction,
+     *     first to one side (4 sixteenths of a turn) and, if that side is blocked
+     *     by the edge of the play area or another red station, to the other
+     *     (-4), until moving to the target is safe. If both sides are blocked,
+     *     it steps back and tries both sides again.
      * </p>
-     * @param dir the direction which drone wants to know if is safe to move
-     * @return boolean which says if the direction is safe or not
+     * @param target index of the station that drone's target = current head of a queue plan
      */
-    private boolean checkSafetyOfDirection(Direction dir){
-        Position nextPosition = position.nextPosition(dir);
-        Feature redStationInRange = null;
-        double redSmallestDistance = 10;
-        double greenSmallestDistance = 10;
-        for(Feature f : gameStateMap.features.features()){
-            if(!f.geometry().type().equals("Point")) continue;
-            Point p = (Point) f.geometry();
-            Position stationPosition = new Position(p.coordinates().get(1), p.coordinates().get(0));
-            double distance = gameStateMap.calculateDistance(nextPosition, stationPosition);
-            if(distance <= 0.00025){
-//            get closest red and green
-                if(f.getProperty("marker-symbol").getAsString().equals("danger")){
-                    if(distance < redSmallestDistance) {
-                        redSmallestDistance = distance;
-                        redStationInRange = f;
-                    }
-                }
-                else {
-                    if (distance < greenSmallestDistance) {
-                        greenSmallestDistance = distance;
-                    }
+    private void avoidRedStation(int target) {
+        while(true) {
+            if(sideSectors == BACK) {
+                makeMove(avoidedDirection.rotate(BACK));
+                avoidedDirection = getDirectionToTarget(target);
+                sideSectors = 4;
+                return;
+            }
+            Direction side = avoidedDirection.rotate(sideSectors);
+            if(lattice.inPlayArea(Lattice.next(point, side)) && checkSafetyOfDirection(side)) {
+                makeMove(side);
+                checkGreenStationsNearby();
+                //avoidedDirection is null if the target was charged from on the way
+                if(avoidedDirection != null && checkSafetyOfDirection(avoidedDirection)) {
+                    avoidedDirection = null;
                 }
+                return;
             }
+            sideSectors = sideSectors == 4 ? -4 : BACK;
         }
-        if(redStationInRange == null || greenSmallestDistance < redSmallestDistance){
-            return true;
-        }
-        return false;
     }
 
     /**
      * <p>
-     *     This method is used when the drone can't move in the desired direction.
-     *     It is used to avoid the red station that lies in the direction to target station.
-     *     To avoid this obstacle, drone moves left or right of the desired direction.
+     *     Makes the next move along the path of the PathPlanner to the head of
+     *     the queue plan, planning the path first if there is none. A station
+     *     which can't be reached is dropped from the plan. Green stations passed
+     *     on the way are charged from too.
      * </p>
-     * @param target Feature corresponding to drone's target = current head of a queue plan
-     * @return boolean which says if the direction is safe or not
+     * @return false if the plan is empty, in which case no move was made
      */
-    private void moveToAvoidRedStation(Feature target){
-        Direction directionToTarget = getDirectionToTarget(target);
-
-        if(moveToSidesToAvoid(directionToTarget,90)) return; // try right direction
+    private boolean moveAlongPlannedPath() {
+        while(plannedPath == null) {
+            if(planToFollow.isEmpty()) {
+                return false;
+            }
+            plannedPath = planPath(planToFollow.peek());
+            plannedMove = 0;
+            if(plannedPath == null) {
+                planToFollow.remove();
+            }
+            else if(plannedPath.length == 0) {
+                chargeFromTarget();
+                plannedPath = null;
+            }
+        }
+        makeMove(plannedPath[plannedMove++]);
+        checkGreenStationsNearby();
+        if(plannedPath != null && plannedMove == plannedPath.length) {
+            chargeFromTarget();
+            plannedPath = null;
+        }
+        return true;
+    }
 
-        if(moveToSidesToAvoid(directionToTarget,-90)) return; // try left then
+    /**
+     * <p>
+     *     Plans the moves to a target with the PathPlanner. If the drone has a
+     *     PathCache and the cache has a path from the station charged from last
+     *     to the target, that path is followed instead, as long as every point
+     *     of it is safe; if it doesn't end in range of the target, because this
+     *     drone starts it from another point, the PathPlanner plans the rest of
+     *     the way. A path which had to be planned is kept in the cache.
+     * </p>
+     * @param target index of the station that drone's target = current head of a queue plan
+     * @return the moves, or null if the target can't be reached
+     */
+    private Direction[] planPath(int target) {
+        StationTable stations = gameStateMap.stations;
+        double targetLatitude = stations.latitude[target];
+        double targetLongitude = stations.longitude[target];
+        boolean cached = pathCache != null && lastTarget != -1;
+        if(cached) {
+            Direction[] path = pathCache.get(lastTarget, target);
+            long end = point;
+            for(int k = 0; path != null && k < path.length; k++) {
+                end = Lattice.next(end, path[k]);
+                if(!lattice.inPlayArea(end) || !hazards.isSafe(gameStateMap, lattice.latitude(end), lattice.longitude(end), nearbyStations)) {
+                    path = null;
+                }
+            }
+            Direction[] rest = path == null ? null : pathPlanner.plan(gameStateMap, lattice, end, targetLatitude, targetLongitude);
+            if(rest != null) {
+                pathCache.hits.incrementAndGet();
+                Direction[] whole = Arrays.copyOf(path, path.length + rest.length);
+                System.arraycopy(rest, 0, whole, path.length, rest.length);
+                return whole;
+            }
+        }
+        Direction[] path = pathPlanner.plan(gameStateMap, lattice, point, targetLatitude, targetLongitude);
+        if(cached) {
+            pathCache.misses.incrementAndGet();
+            if(path != null) {
+                pathCache.put(lastTarget, target, path);
+            }
+        }
+        return path;
+    }
 
-//      go back if previous don't work
-        double reverseAngle = (directionToTarget.toAnticlockwiseAngle() - 180) % 360;
-        Direction moveBackwardsDirection = gameStateMap.getDirectionFromAngle(reverseAngle);
-        Position previousPosition = position;
-        movesCount++;
+    private void makeMove(Direction dir) {
         power -= 1.25;
-        writeMoveToFile(previousPosition);
-        position = position.nextPosition(moveBackwardsDirection);
-        previousPositions.add(position);
-        moveToAvoidRedStation(target);
-
-//
-////        if(directions_to_move != null) {
-////            for (Direction next_dir : directions_to_move) {
-////                final_next_position = final_next_position.nextPosition(next_dir);
-////            }
-////        }
-//
-//        if(right_side && position.nextPosition(move_to_r_side).inPlayArea() && !avoid_these_directions.contains(move_to_r_side)){
-//            Position prev = position;
-//            moves++;
-//            power -= 1.25;
-//            write_move(prev);
-//            position = position.nextPosition(move_to_r_side);
-//            path.add(position);
-//            check_greens();
-//            Direction desired = get_direction_to_target(target);
-//            if(check_safety(desired)) return;
-//            avoid_these_directions.add(gameStateMap.get_direction_from_angle((move_to_r_side.to_anticlock_angle() - 180) % 360 ));
-//            move_to_avoid_red(target, avoid_these_directions);
-//        }
-//
-//        boolean left_side = check_safety(move_to_l_side);
-//        if(left_side && position.nextPosition(move_to_l_side).inPlayArea() && !avoid_these_directions.contains(move_to_l_side)){
-//            Position prev = position;
-//            moves++;
-//            power -= 1.25;
-//            write_move(prev);
-//            position = position.nextPosition(move_to_l_side);
-//            path.add(position);
-//            check_greens();
-//            Direction desired = get_direction_to_target(target);
-//            if(check_safety(desired)) return;
-//            avoid_these_directions.add(gameStateMap.get_direction_from_angle((move_to_l_side.to_anticlock_angle() - 180) % 360 ));
-//            move_to_avoid_red(target, avoid_these_directions);
-//        }
+        movesCount++;
+        lastDirectionUsed = dir;
+        step(dir);
+    }
 
-//        if(position.nextPosition(move_to_r_side).inPlayArea()){
-//            directions_to_move.add(move_to_r_side);
-//            move_to_avoid_red(directionToTarget, directions_to_move);
-//        }
-//        else if(position.nextPosition(move_to_l_side).inPlayArea()){
-//            directions_to_move.add(move_to_l_side);
-//            move_to_avoid_red(directionToTarget,directions_to_move);
-//        }
-////        go back
-//        else{
-//            double reverseAngle = (directionToTarget.to_anticlock_angle() - 180) % 360;
-//            Direction moveBackwards = gameStateMap.get_direction_from_angle(reverseAngle);
-//            avoid_these_directions.add(directionToTarget);
-//            move_to_avoid_red(target, avoid_these_directions);
-//        }
+    private boolean isInRange(int station) {
+        return gameStateMap.stations.distance(station, position.latitude, position.longitude) <= GameStateMap.CHARGING_RANGE;
     }
 
     /**
      * <p>
-     *     A method called from move_to_avoid_red method. This method moves
-     *     the drone in a direction of a given angle. It is always either right (90)
-     *     or left (-90) angle of the desired direction (direction to head of plan)
-     *     This method is called recursively until it is safe to move or until the
-     *     edge of a play area is reached.
+     *     Charges from the head of the queue plan and removes it from the plan.
      * </p>
-     * @param target desired Direction which drone wants to move, but is not safe
-     * @param angle int angle that drone uses to avoid an obstacle, always 90 or -90
-     * @return boolean false if this method failed to avoid an obstacle by moving in
-     *                 direction of a given angle
      */
-    private boolean moveToSidesToAvoid(Direction target, int angle){
-        double perpAngleToDesiredAngle = (target.toAnticlockwiseAngle() + angle) % 360;
-        Direction moveToPerpSide = gameStateMap.getDirectionFromAngle(perpAngleToDesiredAngle);
-
-        if(!position.nextPosition(moveToPerpSide).inPlayArea() || !checkSafetyOfDirection(moveToPerpSide)){
-            return false;
-        }
-
-        Position previousPosition = position;
-        movesCount++;
-        power -= 1.25;
-        position = position.nextPosition(moveToPerpSide);
-        writeMoveToFile(previousPosition);
-        previousPositions.add(position);
-        checkGreenStationsNearby();
+    private void chargeFromTarget() {
+        int target = planToFollow.remove();
+        lastTarget = target;
+        coins += gameStateMap.coins(target);
+        power += gameStateMap.power(target);
+        gameStateMap.updateStation(target, 0, 0);
+    }
 
-        if(checkSafetyOfDirection(target)) return true;
-        return moveToSidesToAvoid(target, angle);
+    /**
+     * <p>
+     *     This is a method used to check if moving in a given direction
+     *     is safe for the drone on not.
+     *     Safe means that there isn't any red station reachable at the next
+     *     position after moving in the given direction, or that some green
+     *     station is closer than all of them. It is looked up in the HazardRaster of the map.
+     * </p>
+     * @param dir the direction which drone wants to know if is safe to move
+     * @return boolean which says if the direction is safe or not
+     */
+    boolean checkSafetyOfDirection(Direction dir){
+        long next = Lattice.next(point, dir);
+        return hazards.isSafe(gameStateMap, lattice.latitude(next), lattice.longitude(next), nearbyStations);
     }
 
     /**
@@ -247,21 +374,27 @@ public class StatefulDrone extends Drone {
      *     A method used to check if the drone is near some other green stations
      *     to which it moved by avoiding obstacles (red stations) while moving towards
      *     the current head of a plan queue.
-     *     If there is such a green station, remove it from the plan queue and collect
-     *     its coins and power.
+     *     If there is such a green station, collect its coins and power and
+     *     repair the plan, which removes the station from it. If the station
+     *     was the head of the plan, the drone heads for the new head from
+     *     the next move on.
      * </p>
      */
     private void checkGreenStationsNearby(){
-        Feature closestGreenStation = findClosestGreenStation(gameStateMap.features, position);
-        Point p = (Point) closestGreenStation.geometry();
-        Position stationPosition = new Position(p.coordinates().get(1), p.coordinates().get(0));
-        double distance = gameStateMap.calculateDistance(position, stationPosition);
+        StationTable stations = gameStateMap.stations;
+        int closestGreenStation = findClosestGreenStation(null, position);
+        double distance = stations.distance(closestGreenStation, position.latitude, position.longitude);
 
         if(distance < 0.00025){
-            coins += closestGreenStation.getProperty("coins").getAsDouble();
-            power += closestGreenStation.getProperty("power").getAsDouble();
-            gameStateMap.updateStation(closestGreenStation.getProperty("id").getAsString(),0,0);
-            planToFollow.remove(stationPosition);
+            coins += gameStateMap.coins(closestGreenStation);
+            power += gameStateMap.power(closestGreenStation);
+            gameStateMap.updateStation(closestGreenStation,0,0);
+            if(planToFollow.repair()) {
+                pendingDirection = null;
+                avoidedDirection = null;
+                plannedPath = null;
+                lastTarget = closestGreenStation;
+            }
         }
     }
 
@@ -271,53 +404,68 @@ public class StatefulDrone extends Drone {
      *     Current strategy is to firstly, find a closest station to the current
      *     position of a drone, add it to the queue (head of a queue) and after that,
      *     find the closest station to the previously found station.
-     *     This creates a queue of Feature that represent the stations
-     *     which drone is going to follow when play() is called.
+     *     This creates a queue of stations which drone is going to
+     *     follow when play() is called.
+     *     If the drone has an OrienteeringPlanner, the stations with the most coins
+     *     within the moves of the drone are put first, and the statistics of that
+     *     search are reported to the log, and if it has a TourPlanner, the queue is
+     *     then reordered by it.
      * </p>
      */
-    private void findGamePlan(){
-        List<Feature> featureArrayList = new ArrayList<>(gameStateMap.features.features());
-        FeatureCollection stations = FeatureCollection.fromFeatures(featureArrayList);
+    void findGamePlan(){
+        boolean[] planned = new boolean[gameStateMap.stations.size];
+        StationTable stations = gameStateMap.stations;
         Position position = this.position;
 
         while(true){
-            Feature closestGreenStation = findClosestGreenStation(stations, position);
-            if(closestGreenStation == null){
+            int closestGreenStation = findClosestGreenStation(planned, position);
+            if(closestGreenStation == -1){
                 break;
             }
             planToFollow.add(closestGreenStation);
-            stations.features().remove(closestGreenStation);
-            Point p = (Point) closestGreenStation.geometry();
-            position = new Position(p.coordinates().get(1), p.coordinates().get(0));
+            planned[closestGreenStation] = true;
+            position = stations.position(closestGreenStation);
+        }
+        if(orienteering != null) {
+            int[] tour = planToFollow.toArray();
+            planToFollow.clear();
+            for(int station : orienteering.plan(gameStateMap, this.position.latitude, this.position.longitude, tour)) {
+                planToFollow.add(station);
+            }
+            if(log != null) log.printf("Orienteering plan: %s \n", orienteering);
+        }
+        if(planner != null) {
+            improveGamePlan(planner);
+        }
+    }
+
+    /**
+     * <p>
+     *     Reorders the plan with a TourPlanner, which starts from the
+     *     current plan and keeps improving it until its time budget runs out.
+     * </p>
+     * @param planner TourPlanner used to reorder the plan
+     */
+    void improveGamePlan(TourPlanner planner) {
+        int[] tour = planToFollow.toArray();
+        planToFollow.clear();
+        for(int station : planner.improve(gameStateMap, this.position.latitude, this.position.longitude, tour)) {
+            planToFollow.add(station);
         }
     }
 
     /**
      * <p>
      *     Method that is called to find the closest green station to the position
-     *     given, from the FeatureCollection given as parameters.
-     *     It iterates through all the features and simply stores the closest one.
+     *     given, skipping the stations that are excluded.
+     *     It asks the StationGrid which only searches the cells around the position.
      * </p>
-     * @param features FeatureCollection from which it finds the closest one
+     * @param excluded stations which are not considered, or null to consider all of them
      * @param pos Position that is used to calculate distances
-     * @return Feature that represent the closest green station to the given Position
+     * @return index of the closest green station to the given Position, or -1 if there is none
      */
-    private Feature findClosestGreenStation(FeatureCollection features, Position pos){
-        Feature closestGreenStation = null;
-        double closestDistance = 10000;
-        for (Feature feature: features.features()) { //
-            Geometry g = feature.geometry();
-            if (g.type().equals("Point") && feature.getProperty("marker-symbol").getAsString().equals("lighthouse")){
-                Point p = (Point) g;
-                Position stationPosition = new Position(p.coordinates().get(1), p.coordinates().get(0));
-                double distance = gameStateMap.calculateDistance(pos, stationPosition);
-                if(distance < closestDistance){
-                    closestDistance = distance;
-                    closestGreenStation = feature;
-                }
-            }
-        }
-        return closestGreenStation;
+    private int findClosestGreenStation(boolean[] excluded, Position pos){
+        return gameStateMap.grid.nearest(pos.latitude, pos.longitude, StationTable.LIGHTHOUSE, excluded);
     }
 
     /**
@@ -327,13 +475,12 @@ public class StatefulDrone extends Drone {
      *     method getDirectionFromAngle which calculates Direction corresponding
      *     to the given angle.
      * </p>
-     * @param target Feature that drone wants to find the Direction to
+     * @param target index of the station that drone wants to find the Direction to
      * @return dir Direction which leads to the target position
      */
-    private Direction getDirectionToTarget(Feature target){
-        Point p = (Point) target.geometry();
-        double targetLongitude = p.coordinates().get(0);
-        double targetLatitude = p.coordinates().get(1);
+    private Direction getDirectionToTarget(int target){
+        double targetLongitude = gameStateMap.stations.longitude[target];
+        double targetLatitude = gameStateMap.stations.latitude[target];
         double angle = Math.toDegrees(Math.atan2(targetLatitude - position.latitude, targetLongitude - position.longitude));
         return gameStateMap.getDirectionFromAngle(angle);
     }
@@ -359,32 +506,34 @@ public class StatefulDrone extends Drone {
      *             to write required information to the file
      */
     private void writeMoveToFile(Position prev){
-        if(this.movesCount == 250) return; //System.exit(0);
         pathTxtWriter.format("%f, %f, %s, %f, %f, %f, %f \n", prev.latitude, prev.longitude, lastDirectionUsed.name(), position.latitude, position.longitude, coins, power);
-        System.out.printf("Current location: (%f,%f), Coins: %f, Power: %f, moved here by going: %s \n", position.latitude, position.longitude, coins, power, lastDirectionUsed.name());
+        if(log != null) log.printf("Current location: (%f,%f), Coins: %f, Power: %f, moved here by going: %s \n", position.latitude, position.longitude, coins, power, lastDirectionUsed.name());
     }
 
     /**
      * <p>
      *     This method is used when drone empties is plan queue.
      *     Meaning that it reached all the green stations and now
-     *     all the is left is to either move until it has moved 250
-     *     times or until is runs out of energy.
-     *     Goal is to move in random directions, but avoid red stations.
+     *     all the is left is to move until it has moved 250 times
+     *     or until is runs out of energy.
+     *     Goal is to move in random directions, but avoid red stations,
+     *     so random directions are drawn until a safe one is drawn.
+     *     If no direction is safe, the first one drawn is used.
      * </p>
      */
     private void moveRandomly(){
-        if(movesCount > 250 || power < 1.25) return;
-        HashMap<Direction, Position> possibleNextPositions = gameStateMap.getPossiblePositions(position);
-        Direction randomDirection = gameStateMap.getRandomDirection(possibleNextPositions.keySet().size(), possibleNextPositions.keySet().toArray(new Direction[possibleNextPositions.keySet().size()]));
-        if(checkSafetyOfDirection(randomDirection)){
-            Position previousPosition = position;
-            movesCount++;
-            power -= 1.25;
-            position = position.nextPosition(randomDirection);
-            writeMoveToFile(previousPosition);
-            previousPositions.add(position);
+        int possible = 0;
+        boolean anySafe = false;
+        for(Direction d : DIRECTIONS) {
+            if(lattice.inPlayArea(Lattice.next(point, d))) {
+                possibleDirections[possible++] = d;
+                anySafe |= checkSafetyOfDirection(d);
+            }
+        }
+        Direction randomDirection = gameStateMap.getRandomDirection(possible, possibleDirections);
+        while(anySafe && !checkSafetyOfDirection(randomDirection)) {
+            randomDirection = gameStateMap.getRandomDirection(possible, possibleDirections);
         }
-        moveRandomly();
+        makeMove(randomDirection);
     }
 }
@@ -36,7 +36,8 @@ public class StatelessDrone extends Drone {
 	 */
 	public void move() {
 		Direction directionToMove = mapController.getDirectionToMove();
-		position = position.nextPosition(directionToMove);
+		step(directionToMove);
+		mapController.point = point;
 		mapController.position = position;
 		mapController.previousPositions.add(position);
 
@@ -47,5 +48,6 @@ public class StatelessDrone extends Drone {
 
 		mapController.dronesPower = power;
 		mapController.dronesCoins = coins;
+		mapController.dronesMoves = movesCount;
 	}
 }
@@ -0,0 +1,482 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1>
+ *     Multi-step lookahead for the stateless drone.
+ * </h1>
+ * <p>
+ *     Looks at every sequence of up to <code>depth</code> moves from the
+ *     current point of the drone and returns the first move of the best one.
+ *     A sequence is scored by the coins the drone would collect on it, where
+ *     a move charges from the same station as in StatelessMapController:
+ *     the closest lighthouse in range which still has at least 5 coins, or
+ *     if there is none, the closest danger station in range. A lighthouse
+ *     collected earlier in the sequence has no coins left, and the sequence
+ *     ends when the drone would run out of power or moves. Coins collected
+ *     later are discounted by <code>DISCOUNT</code> for each move, so of two
+ *     sequences collecting the same coins the one collecting them sooner wins.
+ * </p>
+ * <p>
+ *     A danger station only ever counts as a loss. The game adds the coins
+ *     and power of the drone to a danger station which charges it, so one
+ *     the drone went through before can have more coins than a lighthouse,
+ *     but the drone is meant to avoid danger stations and not to farm them.
+ *     Danger stations keep their current coins and power during the search,
+ *     so going through the same one twice is counted as twice the loss.
+ * </p>
+ * <p>
+ *     The search goes deeper one move at a time (1, 2, ..., depth), and the
+ *     first moves of each depth are searched in parallel on a ForkJoinPool.
+ *     Inside a branch, positions are memoized by their Lattice point, the
+ *     number of moves left and the lighthouses collected on the way there,
+ *     and a branch is cut off when even the richest lighthouses of the map
+ *     could not make it better than the best sequence found so far by any
+ *     branch. Branches which are cut off are always worse than the best
+ *     one, so the chosen move doesn't depend on the number of threads.
+ * </p>
+ * <p>
+ *     Every move has a time budget. When it runs out, the depth being
+ *     searched is abandoned and the best move of the deepest finished depth
+ *     is returned, so on a slow machine the drone looks less far ahead.
+ * </p>
+ */
+class StatelessLookahead {
+    static final double DISCOUNT = 0.95;
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final double MIN_COINS = 5;
+    private static final int CLOCK_CHECK_INTERVAL = 256;
+
+    private final int depth;
+    private final long budgetNanos;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param depth number of moves looked ahead, at least 1
+     * @param budgetNanos time after which the search of a move is stopped
+     * @param pool ForkJoinPool on which the branches are searched
+     */
+    StatelessLookahead(int depth, long budgetNanos, ForkJoinPool pool) {
+        if(depth < 1) {
+            throw new IllegalArgumentException("Lookahead depth must be positive, not " + depth);
+        }
+        this.depth = depth;
+        this.budgetNanos = budgetNanos;
+        this.pool = pool;
+    }
+
+    /**
+     * <p>
+     *     Creates the lookahead configured by the system properties
+     *     <code>powergrab.lookahead.depth</code> (0, the default, turns it off)
+     *     and <code>powergrab.lookahead.budgetMillis</code> (defaults to 50),
+     *     searching on the common ForkJoinPool.
+     * </p>
+     * @return lookahead, or null if it is turned off
+     */
+    static StatelessLookahead fromSystemProperties() {
+        int depth = Integer.getInteger("powergrab.lookahead.depth", 0);
+        if(depth <= 0) {
+            return null;
+        }
+        long budgetMillis = Long.getLong("powergrab.lookahead.budgetMillis", 50);
+        return new StatelessLookahead(depth, budgetMillis * 1_000_000L, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * <p>
+     *     Station a move to a point charges from, found by the rules of
+     *     StatelessMapController.
+     * </p>
+     * @param gameStateMap map of the game
+     * @param lat latitude of the point
+     * @param lon longitude of the point
+     * @param nearby scratch array able to hold all stations of the map
+     * @param collected lighthouses which are already empty, besides the ones of the map
+     * @param collectedCount number of stations in collected
+     * @return index of the station, or -1 if no station is charged
+     */
+    static int chargedStation(GameStateMap gameStateMap, double lat, double lon, int[] nearby,
+                              int[] collected, int collectedCount) {
+        StationTable stations = gameStateMap.stations;
+        int inRange = gameStateMap.grid.stationsWithin(lat, lon, GameStateMap.CHARGING_RANGE, nearby);
+        int green = -1;
+        int red = -1;
+        double greenDistance = Double.MAX_VALUE;
+        double redDistance = Double.MAX_VALUE;
+        for(int k = 0; k < inRange; k++) {
+            int i = nearby[k];
+            double distance = stations.distance(i, lat, lon);
+            if(stations.isLighthouse(i)) {
+                if(distance < greenDistance && gameStateMap.coins(i) >= MIN_COINS && !contains(collected, collectedCount, i)) {
+                    green = i;
+                    greenDistance = distance;
+                }
+            }
+            else if(distance < redDistance) {
+                red = i;
+                redDistance = distance;
+            }
+        }
+        return green != -1 ? green : red;
+    }
+
+    private static boolean contains(int[] stations, int count, int station) {
+        for(int k = 0; k < count; k++) {
+            if(stations[k] == station) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>
+     *     Searches for the best move of the drone.
+     * </p>
+     * @param gameStateMap map of the game, it is not changed by the search
+     * @param lattice Lattice of the drone
+     * @param point current point of the drone
+     * @param power current power of the drone
+     * @param movesLeft number of moves the drone can still make
+     * @return best move and the statistics of the search
+     */
+    Decision search(GameStateMap gameStateMap, Lattice lattice, long point, double power, int movesLeft) {
+        long start = System.nanoTime();
+        Search search = new Search(gameStateMap, lattice, Math.min(depth, movesLeft), start + budgetNanos);
+        Decision decision = new Decision();
+        for(int d = 1; d <= search.maxDepth; d++) {
+            //sequences of a smaller depth don't bound the ones of this depth, they may end before a danger station
+            search.resetIncumbent();
+            RootTask root = new RootTask(search, point, power, d);
+            pool.invoke(root);
+            for(BranchTask branch : root.branches) {
+                decision.nodes += branch.nodes;
+                decision.memoHits += branch.memoHits;
+                decision.pruned += branch.pruned;
+            }
+            if(search.timedOut) {
+                decision.timedOut = true;
+                break;
+            }
+            decision.direction = null;
+            for(BranchTask branch : root.branches) {
+                if(decision.direction == null || branch.score > decision.score) {
+                    decision.direction = branch.direction;
+                    decision.score = branch.score;
+                }
+            }
+            decision.completedDepth = d;
+        }
+        decision.elapsedNanos = System.nanoTime() - start;
+        return decision;
+    }
+
+    /**
+     * <h1>
+     *     Result of the search of one move.
+     * </h1>
+     */
+    static class Decision {
+        /** First move of the best sequence, or null if not even one move ahead was searched in time. */
+        Direction direction;
+        /** Discounted coins of the best sequence. */
+        double score;
+        /** Deepest depth whose search was finished. */
+        int completedDepth;
+        boolean timedOut;
+        long nodes;
+        long memoHits;
+        long pruned;
+        long elapsedNanos;
+
+        @Override
+        public String toString() {
+            return String.format("%s score %f depth %d%s, %d nodes, %d memo hits, %d pruned, %.3f ms",
+                    direction, score, completedDepth, timedOut ? " (timed out)" : "", nodes, memoHits, pruned,
+                    elapsedNanos / 1e6);
+        }
+    }
+
+    /**
+     * State shared by the branches of one move.
+     */
+    private static class Search {
+        final GameStateMap gameStateMap;
+        final Lattice lattice;
+        final int maxDepth;
+        final long deadline;
+        /** bound[r]: most discounted coins r moves can collect, from the richest lighthouses of the map */
+        final double[] bound;
+        /** most power a move can lose to a danger station */
+        final double maxDrain;
+        volatile boolean timedOut;
+        private volatile double incumbent = Double.NEGATIVE_INFINITY;
+
+        Search(GameStateMap gameStateMap, Lattice lattice, int maxDepth, long deadline) {
+            this.gameStateMap = gameStateMap;
+            this.lattice = lattice;
+            this.maxDepth = maxDepth;
+            this.deadline = deadline;
+            double[] richest = new double[maxDepth];
+            double drain = 0;
+            StationTable stations = gameStateMap.stations;
+            for(int i = 0; i < stations.size; i++) {
+                if(!stations.isLighthouse(i)) {
+                    drain = Math.max(drain, -gameStateMap.power(i));
+                    continue;
+                }
+                double coins = gameStateMap.coins(i);
+                for(int k = 0; k < maxDepth; k++) {
+                    if(coins > richest[k]) {
+                        System.arraycopy(richest, k, richest, k + 1, maxDepth - k - 1);
+                        richest[k] = coins;
+                        break;
+                    }
+                }
+            }
+            maxDrain = drain;
+            bound = new double[maxDepth + 1];
+            double discount = 1;
+            for(int r = 1; r <= maxDepth; r++) {
+                bound[r] = bound[r - 1] + discount * richest[r - 1];
+                discount *= DISCOUNT;
+            }
+        }
+
+        void resetIncumbent() {
+            incumbent = Double.NEGATIVE_INFINITY;
+        }
+
+        double incumbent() {
+            return incumbent;
+        }
+
+        void offer(double score) {
+            if(score > incumbent) {
+                synchronized(this) {
+                    if(score > incumbent) {
+                        incumbent = score;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Searches the first moves of one depth in parallel.
+     */
+    @SuppressWarnings("serial")
+    private static class RootTask extends RecursiveAction {
+        final List<BranchTask> branches = new ArrayList<>();
+
+        RootTask(Search search, long point, double power, int depth) {
+            for(Direction direction : DIRECTIONS) {
+                long next = Lattice.next(point, direction);
+                if(search.lattice.inPlayArea(next)) {
+                    branches.add(new BranchTask(search, direction, next, power, depth));
+                }
+            }
+        }
+
+        @Override
+        protected void compute() {
+            ForkJoinTask.invokeAll(branches);
+        }
+    }
+
+    /**
+     * Depth-first search of the sequences starting with one move.
+     */
+    @SuppressWarnings("serial")
+    private static class BranchTask extends RecursiveAction {
+        final Direction direction;
+        private final Search search;
+        private final long firstPoint;
+        private final double power;
+        private final int depth;
+        private final int[] nearby;
+        private final int[] collected;
+        private final Memo memo = new Memo();
+        double score;
+        long nodes;
+        long memoHits;
+        long pruned;
+
+        BranchTask(Search search, Direction direction, long firstPoint, double power, int depth) {
+            this.search = search;
+            this.direction = direction;
+            this.firstPoint = firstPoint;
+            this.power = power;
+            this.depth = depth;
+            this.nearby = new int[search.gameStateMap.stations.size];
+            this.collected = new int[depth];
+        }
+
+        @Override
+        protected void compute() {
+            score = visit(firstPoint, power, depth, 0, 0, 0, 1);
+        }
+
+        /**
+         * <p>
+         *     Best score of the sequences which move to a point and then make
+         *     up to movesLeft - 1 more moves, discounted from that point on.
+         *     Scores only depend on the position and not on the way to it, so
+         *     the same position always gets the same score to the last bit,
+         *     whether it comes from the memo or is searched again.
+         * </p>
+         * @param scoreSoFar score of the moves before this one, discounted from the first move
+         * @param discount discount of this move from the first move
+         * @return the score, which is exact unless some of the sequences were cut off
+         */
+        private double visit(long point, double power, int movesLeft, long collectedKey, int collectedCount,
+                             double scoreSoFar, double discount) {
+            if(search.timedOut) {
+                return 0;
+            }
+            if(++nodes % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - search.deadline > 0) {
+                search.timedOut = true;
+                return 0;
+            }
+            //positions are the same when the drone gets to the same point with the same lighthouses
+            //collected and as many moves left, power only matters when it could run out before the end
+            long key = collectedKey ^ mix(movesLeft + (long) Integer.MAX_VALUE);
+            if(power <= 1.25 + movesLeft * (1.25 + search.maxDrain)) {
+                key ^= mix(Double.doubleToLongBits(power));
+            }
+            int slot = memo.find(point, key);
+            if(slot >= 0) {
+                memoHits++;
+                return memo.values[slot];
+            }
+
+            double lat = search.lattice.latitude(point);
+            double lon = search.lattice.longitude(point);
+            int station = chargedStation(search.gameStateMap, lat, lon, nearby, collected, collectedCount);
+            double gain = 0;
+            power -= 1.25;
+            if(station != -1 && search.gameStateMap.stations.isLighthouse(station)) {
+                gain = search.gameStateMap.coins(station);
+                power += search.gameStateMap.power(station);
+                collected[collectedCount++] = station;
+                collectedKey ^= mix(station);
+            }
+            else if(station != -1) {
+                gain = Math.min(0, search.gameStateMap.coins(station));
+                power += Math.min(0, search.gameStateMap.power(station));
+            }
+            if(movesLeft == 1 || power <= 1.25) {
+                search.offer(scoreSoFar + discount * gain);
+                return gain;
+            }
+
+            double reached = scoreSoFar + discount * gain;
+            if(reached + discount * DISCOUNT * search.bound[movesLeft - 1] < search.incumbent() - 1e-9) {
+                pruned++;
+                return gain;
+            }
+
+            long prunedBefore = pruned;
+            double best = Double.NEGATIVE_INFINITY;
+            for(Direction next : DIRECTIONS) {
+                long nextPoint = Lattice.next(point, next);
+                if(!search.lattice.inPlayArea(nextPoint)) {
+                    continue;
+                }
+                double value = visit(nextPoint, power, movesLeft - 1, collectedKey, collectedCount,
+                        reached, discount * DISCOUNT);
+                if(value > best) {
+                    best = value;
+                }
+            }
+            if(search.timedOut) {
+                return 0;
+            }
+            double score = gain + DISCOUNT * best;
+            //only exact scores are kept, scores of branches that were cut off depend on the other branches
+            if(pruned == prunedBefore) {
+                memo.put(point, key, score);
+            }
+            return score;
+        }
+
+        /**
+         * Spreads the bits of a number (as SplitMix64 does), so that XOR of a few of them is unlikely to collide.
+         */
+        private static long mix(long value) {
+            long z = value + 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+
+    /**
+     * <p>
+     *     Open-addressing table from a Lattice point and a key of the
+     *     collected lighthouses and the moves left to the score of the point.
+     * </p>
+     */
+    private static class Memo {
+        long[] points = new long[1024];
+        long[] keys = new long[1024];
+        double[] values = new double[1024];
+        boolean[] used = new boolean[1024];
+        int size;
+
+        int find(long point, long key) {
+            for(int slot = slot(point, key); used[slot]; slot = (slot + 1) & (used.length - 1)) {
+                if(points[slot] == point && keys[slot] == key) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        void put(long point, long key, double value) {
+            if(2 * (size + 1) > used.length) {
+                grow();
+            }
+            int slot = slot(point, key);
+            while(used[slot] && !(points[slot] == point && keys[slot] == key)) {
+                slot = (slot + 1) & (used.length - 1);
+            }
+            if(!used[slot]) {
+                used[slot] = true;
+                size++;
+            }
+            points[slot] = point;
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private int slot(long point, long key) {
+            long h = (point ^ key) * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (used.length - 1);
+        }
+
+        private void grow() {
+            long[] oldPoints = points;
+            long[] oldKeys = keys;
+            double[] oldValues = values;
+            boolean[] oldUsed = used;
+            int capacity = used.length * 2;
+            points = new long[capacity];
+            keys = new long[capacity];
+            values = new double[capacity];
+            used = new boolean[capacity];
+            size = 0;
+            for(int slot = 0; slot < oldUsed.length; slot++) {
+                if(oldUsed[slot]) {
+                    put(oldPoints[slot], oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+    }
+}
@@ -1,12 +1,6 @@
 package uk.ac.ed.inf.powergrab;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map.Entry;
-
-import com.mapbox.geojson.Feature;
-import com.mapbox.geojson.Geometry;
-import com.mapbox.geojson.Point;
 
 /**
  * <h1>
@@ -21,26 +15,51 @@ import com.mapbox.geojson.Point;
  * </p>
  */
 class StatelessMapController {
+	private static final Direction[] DIRECTIONS = Direction.values();
+	//stations in range of a position one move away are at most this far from the drone
+	private static final double REACH = GameStateMap.CHARGING_RANGE + 0.0003 + 1e-9;
+	private static final double RANGE_SQUARED = GameStateMap.CHARGING_RANGE * GameStateMap.CHARGING_RANGE;
 
 	private GameStateMap gameStateMap;
+	private final Lattice lattice;
 	Position position;
+	long point;
 	ArrayList<Position> previousPositions;
 	double lastCollectedCoins;
 	double lastCollectedPower;
 	Direction lastDirectionUsed;
 	double dronesCoins;
 	double dronesPower;
+	int dronesMoves;
+	//optional search of several moves ahead, null to only look one move ahead
+	StatelessLookahead lookahead;
+	StatelessLookahead.Decision lastSearch;
+
+	//scratch space of getDirectionToMove, reused by every move
+	private final int[] nearbyStations;
+	private final CandidateKernel kernel;
+	private final boolean[] candidateInPlayArea = new boolean[DIRECTIONS.length];
+	private final Direction[] safeDirections = new Direction[DIRECTIONS.length];
+	private int safeCount;
+	private Direction minGreenDir;
+	private Direction minRedDir;
+	private int greenStation;
+	private int redStation;
 
 	
 	StatelessMapController(GameStateMap gameStateMap, Position position) {
 		this.gameStateMap = gameStateMap;
 		this.position = position;
+		this.lattice = new Lattice(position);
+		this.point = Lattice.ORIGIN;
 		previousPositions = new ArrayList<>();
 		lastDirectionUsed = null;
 		lastCollectedCoins = 0;
 		lastCollectedPower = 0;
 		dronesCoins = 0;
 		dronesPower = 250;
+		nearbyStations = new int[gameStateMap.stations.size];
+		kernel = new CandidateKernel(DIRECTIONS.length, gameStateMap.stations.size);
 	}
 
 	/**
@@ -51,90 +70,106 @@ class StatelessMapController {
 	 * <p>
 	 *     It goes through all possible moves in which the drone can currently
 	 *     move and for each one it finds what are the reachable stations
-	 *     from there. It stores only the closest green and red stations over
+	 *     from there. The StationGrid gives the stations around the drone
+	 *     once, and the CandidateKernel compares them with all sixteen
+	 *     positions in one pass. It stores only the closest green and red stations over
 	 *     all possible move, and also all directions that doesn't lead to
 	 *     any station. After that it uses another method to choose from these
 	 *     found stations.
 	 * </p>
+	 * <p>
+	 *     Directions are looked at in the order in which they are declared and
+	 *     the results are kept in fields of the controller which are reused by
+	 *     every move, so once the game is running a move doesn't allocate anything.
+	 * </p>
+	 * <p>
+	 *     If the controller has a StatelessLookahead, the direction it finds
+	 *     is used instead whenever it leads to some coins, and the station
+	 *     that direction charges from is collected in the same way. Its
+	 *     statistics are kept in <code>lastSearch</code>, which the Game
+	 *     reports to its log after every move.
+	 * </p>
 	 * @return suitable Direction which drone uses to move so it goes to the
 	 * 		   green stations nearby and avoid red stations nearby
 	 */
 	public Direction getDirectionToMove() {
-		HashMap<Direction, Position> possiblePositions = gameStateMap.getPossiblePositions(position);
-		HashMap<String, String> closestStations = new HashMap<>();
-		
-		HashMap<String, ArrayList<Direction>> directionsToClosestStations = new HashMap<>();
-		double minGreenDist = 100000;
-		double minRedDist = 100000;
-		Direction minGreenDir = null;
-		Direction minRedDir = null;
-		ArrayList<Direction> safeDirections = new ArrayList<>();
-		HashMap<String,Double> closestStationsCoinsPower = new HashMap<>();
-		
-		for(Entry<Direction, Position> nextPosition: possiblePositions.entrySet()) {
-			for (Feature f: gameStateMap.features.features()){
-				Geometry g = f.geometry();
-				if(g.type().equals("Point")){
-					
-					Point stationPoint = (Point) g;
-					Position stationPosition = new Position(stationPoint.coordinates().get(1),stationPoint.coordinates().get(0));
-					double distance = gameStateMap.calculateDistance(nextPosition.getValue(), stationPosition);
-				
-					if(distance > 0.00025) {
-						if(!safeDirections.contains(nextPosition.getKey())){
-							safeDirections.add(nextPosition.getKey());
-						}
-						continue;
-					}
-				
-					if(f.getProperty("marker-symbol").getAsString().equals("lighthouse")) {
-						
-						if(distance < minGreenDist) {
-							if(f.getProperty("coins").getAsDouble() < 5){
-								continue;
-							}
-							minGreenDir = nextPosition.getKey();
-							minGreenDist = distance;
-							closestStationsCoinsPower.put("greenCoins", f.getProperty("coins").getAsDouble());
-							closestStationsCoinsPower.put("greenPower", f.getProperty("power").getAsDouble());
-							closestStations.put("greenStation",f.getProperty("id").getAsString());
-						}
-					}
+		if(lookahead != null) {
+			lastSearch = lookahead.search(gameStateMap, lattice, point, dronesPower, 250 - dronesMoves);
+			if(lastSearch.direction != null && lastSearch.score > 0) {
+				long next = Lattice.next(point, lastSearch.direction);
+				int station = StatelessLookahead.chargedStation(gameStateMap, lattice.latitude(next), lattice.longitude(next),
+						nearbyStations, null, 0);
+				lastDirectionUsed = lastSearch.direction;
+				return collectFrom(station, lastSearch.direction);
+			}
+		}
 
-					else{
-						
-						if(distance < minRedDist) {
-							minRedDir = nextPosition.getKey();
-							minRedDist = distance;
-							closestStationsCoinsPower.put("redCoins", f.getProperty("coins").getAsDouble());
-							closestStationsCoinsPower.put("redPower", f.getProperty("power").getAsDouble());
-							closestStations.put("redStation",f.getProperty("id").getAsString());
-						}
-					}
-						
-				}
+		double minGreenDistSquared = 100000;
+		double minRedDistSquared = 100000;
+		minGreenDir = null;
+		minRedDir = null;
+		greenStation = -1;
+		redStation = -1;
+		safeCount = 0;
+
+		StationTable stations = gameStateMap.stations;
+		for(int d = 0; d < DIRECTIONS.length; d++) {
+			long next = Lattice.next(point, DIRECTIONS[d]);
+			kernel.candidateLatitude[d] = lattice.latitude(next);
+			kernel.candidateLongitude[d] = lattice.longitude(next);
+			candidateInPlayArea[d] = Position.inPlayArea(kernel.candidateLatitude[d], kernel.candidateLongitude[d]);
+		}
+		int nearby = gameStateMap.grid.stationsWithin(lattice.latitude(point), lattice.longitude(point), REACH, nearbyStations);
+		kernel.clearStations();
+		for(int k = 0; k < nearby; k++) {
+			int i = nearbyStations[k];
+			byte kind = !stations.isLighthouse(i) ? CandidateKernel.RED
+					: gameStateMap.coins(i) < 5 ? CandidateKernel.OTHER : CandidateKernel.GREEN;
+			kernel.addStation(i, stations.latitude[i], stations.longitude[i], kind);
+		}
+		kernel.run(RANGE_SQUARED);
+
+		for(int d = 0; d < DIRECTIONS.length; d++) {
+			if(!candidateInPlayArea[d]) {
+				continue;
+			}
+			Direction direction = DIRECTIONS[d];
+
+			//some station is out of range, so the direction counts as safe
+			if(kernel.inRange[d] < stations.size) {
+				safeDirections[safeCount++] = direction;
+			}
+			if(kernel.nearestGreenSquared[d] < minGreenDistSquared) {
+				minGreenDir = direction;
+				minGreenDistSquared = kernel.nearestGreenSquared[d];
+				greenStation = kernel.nearestGreen[d];
+			}
+			if(kernel.nearestRedSquared[d] < minRedDistSquared) {
+				minRedDir = direction;
+				minRedDistSquared = kernel.nearestRedSquared[d];
+				redStation = kernel.nearestRed[d];
 			}
 		}
 		
-		ArrayList<Direction> greenDirections = new ArrayList<>();
-		greenDirections.add(minGreenDir);
-		ArrayList<Direction> redDirections = new ArrayList<>();
-		redDirections.add(minRedDir);
 		if (minRedDir != null){
-			safeDirections.removeIf(minRedDir::equals);
+			int kept = 0;
+			for(int k = 0; k < safeCount; k++) {
+				if(safeDirections[k] != minRedDir) {
+					safeDirections[kept++] = safeDirections[k];
+				}
+			}
+			safeCount = kept;
 		}
-		directionsToClosestStations.put("green", greenDirections);
-		directionsToClosestStations.put("red", redDirections);
-		directionsToClosestStations.put("safe", safeDirections);
 
-		Direction optimalDirection = chooseClosestStation(directionsToClosestStations, closestStationsCoinsPower, closestStations);
+		Direction optimalDirection = chooseClosestStation();
 		lastDirectionUsed = optimalDirection;
 		return optimalDirection;
 	}
 
 	/**
 	 * <p>
-	 *     This method chooses which direction is the best one from the given ones.
+	 *     This method chooses which direction is the best one from the ones
+	 *     found by getDirectionToMove.
 	 *     If there is a Direction which leads to the green station, this direction
 	 *     is always prioritizes this direction.
 	 *     If there isn't a "green direction", the one which doesn't lead to any
@@ -142,75 +177,58 @@ class StatelessMapController {
 	 *     direction or it leads out of play area), direction that leads to the
 	 *     red station is chosen.
 	 * </p>
-	 * @param directionsToClosestStations HashMap where key is the type of a station/direction (green, safe, red)
-	 *                                       and value is a list of directions which belongs to this type
-	 *                                       green/red means that these directions leads to the green/red stations,
-	 *                                       and safe means that there is no station.
-	 * @param closestStationsCoinsPower HashMap where value is the amount of coins or power that each
-	 *                                     station from the directionsToClosestStations hashmap has.
-	 *                                     For example greenCoins key has the value of coins that green
-	 *                                     station in directionsToClosestStations have.
-	 * @param closestStations HashMap which stores the ids of the stations that are in
-	 *                           the directionsToClosestStations.
-	 * @return the best possible direction from the given directionsToClosestStations, depending on what
-	 * 		   is in the directionsToClosestStations hashmap
+	 * @return the best possible direction, or null if no direction was found at all
 	 */
-	public Direction chooseClosestStation(HashMap<String, ArrayList<Direction>> directionsToClosestStations,
-										  HashMap<String, Double> closestStationsCoinsPower,
-										  HashMap<String, String> closestStations) {
-		Direction d = null;
-		if(directionsToClosestStations.get("green").get(0) != null) {
-			d = directionsToClosestStations.get("green").get(0);
-			lastCollectedCoins = closestStationsCoinsPower.get("greenCoins");
-			lastCollectedPower = closestStationsCoinsPower.get("greenPower");
-			gameStateMap.updateStation(closestStations.get("greenStation"), dronesCoins, dronesPower);
+	private Direction chooseClosestStation() {
+		if(minGreenDir != null) {
+			return collectFrom(greenStation, minGreenDir);
 		}
-		else if(directionsToClosestStations.get("safe").get(0) != null) {
-			d = getRandDirection(directionsToClosestStations.get("safe"));
-			lastCollectedCoins = 0;
-			lastCollectedPower = 0;
-			if(d == null) {
-				d = directionsToClosestStations.get("red").get(0);
-				lastCollectedCoins = closestStationsCoinsPower.get("redCoins");
-				lastCollectedPower = closestStationsCoinsPower.get("redPower");
-				gameStateMap.updateStation(closestStations.get("redStation"), dronesCoins, dronesPower);
+		if(safeCount > 0) {
+			Direction d = getRandDirection();
+			if(d != null) {
+				lastCollectedCoins = 0;
+				lastCollectedPower = 0;
+				return d;
 			}
 		}
-		else {
-			d = directionsToClosestStations.get("red").get(0);
-			lastCollectedCoins = closestStationsCoinsPower.get("redCoins");
-			lastCollectedPower = closestStationsCoinsPower.get("redPower");
-			gameStateMap.updateStation(closestStations.get("redStation"), dronesCoins, dronesPower);
+		return collectFrom(redStation, minRedDir);
+	}
+
+	private Direction collectFrom(int station, Direction direction) {
+		if(station == -1) {
+			lastCollectedCoins = 0;
+			lastCollectedPower = 0;
+			return direction;
 		}
-		return d;
+		lastCollectedCoins = gameStateMap.coins(station);
+		lastCollectedPower = gameStateMap.power(station);
+		gameStateMap.updateStation(station, dronesCoins, dronesPower);
+		return direction;
 	}
 
 	/**
 	 * <p>
-	 *     This method takes a list of directions and takes random
-	 *     element from it using the GameStateMap's method which
-	 *     uses the Random instance that was created using the
-	 *     seed command-line argument.
+	 *     This method takes a random one of the safe directions using the
+	 *     GameStateMap's method which uses the Random instance that was
+	 *     created using the seed command-line argument. A direction which
+	 *     leads out of the play area is dropped and another one is taken.
 	 * </p>
-	 * @param directions list of direction from which method chooses random one
-	 * @return random Direction from the given list
+	 * @return random Direction from the safe ones, or null if none of them can be used
 	 */
-	public Direction getRandDirection(ArrayList<Direction> directions) {
-		if(directions.isEmpty()) {
-			return null;
-		}
-		Direction[] directionsArray = new Direction[directions.size()];
-        directionsArray = directions.toArray(directionsArray);
-		Direction randomDirection = gameStateMap.getRandomDirection(directionsArray.length, directionsArray);
-		
-		Position next = position.nextPosition(randomDirection);
-		if(next.inPlayArea()){
-			return randomDirection;
-		}
-		else {
-			directions.remove(randomDirection);
-			return getRandDirection(directions);
+	private Direction getRandDirection() {
+		while(safeCount > 0) {
+			Direction randomDirection = gameStateMap.getRandomDirection(safeCount, safeDirections);
+			if(lattice.inPlayArea(Lattice.next(point, randomDirection))) {
+				return randomDirection;
+			}
+			int k = 0;
+			while(safeDirections[k] != randomDirection) {
+				k++;
+			}
+			System.arraycopy(safeDirections, k + 1, safeDirections, k, safeCount - k - 1);
+			safeCount--;
 		}
+		return null;
 	}
 
 	/**
@@ -0,0 +1,168 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * <h1>
+ *     Uniform grid over the play area used to find stations near a point.
+ * </h1>
+ * <p>
+ *     The play area is split into square cells whose side is the charging
+ *     range, so every station within the charging range of a point lies in
+ *     the 3x3 block of cells around the point. Stations outside of the play
+ *     area are kept in the nearest border cell, which keeps the queries
+ *     exact for any point.
+ * </p>
+ * <p>
+ *     Stations of each cell are stored next to each other in one array
+ *     (<code>cellStations</code>), and <code>cellStart</code> says where
+ *     each cell begins in it, so a query does not allocate and its cost
+ *     only depends on the number of stations around the point.
+ * </p>
+ */
+class StationGrid {
+    private final StationTable stations;
+    private final double cellSize;
+    private final int rows;
+    private final int columns;
+    private final int[] cellStart;
+    private final int[] cellStations;
+
+    StationGrid(StationTable stations, double cellSize) {
+        this.stations = stations;
+        this.cellSize = cellSize;
+        this.rows = Math.max(1, (int) Math.ceil((Position.MAX_LATITUDE - Position.MIN_LATITUDE) / cellSize));
+        this.columns = Math.max(1, (int) Math.ceil((Position.MAX_LONGITUDE - Position.MIN_LONGITUDE) / cellSize));
+        this.cellStart = new int[rows * columns + 1];
+        this.cellStations = new int[stations.size];
+
+        //counting sort of the stations by their cell, which keeps them in table order inside each cell
+        int[] cellOf = new int[stations.size];
+        for(int i = 0; i < stations.size; i++) {
+            cellOf[i] = row(stations.latitude[i]) * columns + column(stations.longitude[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for(int c = 0; c < rows * columns; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] next = Arrays.copyOf(cellStart, rows * columns);
+        for(int i = 0; i < stations.size; i++) {
+            cellStations[next[cellOf[i]]++] = i;
+        }
+    }
+
+    private int row(double latitude) {
+        return clamp((int) Math.floor((latitude - Position.MIN_LATITUDE) / cellSize), rows);
+    }
+
+    private int column(double longitude) {
+        return clamp((int) Math.floor((longitude - Position.MIN_LONGITUDE) / cellSize), columns);
+    }
+
+    private static int clamp(int index, int count) {
+        return index < 0 ? 0 : (index >= count ? count - 1 : index);
+    }
+
+    /**
+     * <p>
+     *     Finds all stations whose distance from a point is at most a given
+     *     radius. The stations are returned in the order of the StationTable,
+     *     so callers see them in the same order as a scan of the whole table.
+     * </p>
+     * @param lat latitude of the point
+     * @param lon longitude of the point
+     * @param radius maximal distance of a station from the point
+     * @param result array which is filled with indices of the found stations,
+     *               it must be able to hold all the stations of the table
+     * @return number of stations written to the result array
+     */
+    int stationsWithin(double lat, double lon, double radius, int[] result) {
+        int fromRow = row(lat - radius);
+        int toRow = row(lat + radius);
+        int fromColumn = column(lon - radius);
+        int toColumn = column(lon + radius);
+        int count = 0;
+        for(int r = fromRow; r <= toRow; r++) {
+            for(int c = fromColumn; c <= toColumn; c++) {
+                int cell = r * columns + c;
+                for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int station = cellStations[k];
+                    if(stations.distance(station, lat, lon) <= radius) {
+                        result[count++] = station;
+                    }
+                }
+            }
+        }
+        if(count > 1) {
+            Arrays.sort(result, 0, count);
+        }
+        return count;
+    }
+
+    /**
+     * <p>
+     *     Finds the closest station of a given kind to a point.
+     *     Cells are searched in growing square rings around the point, until
+     *     no station in a ring that was not searched yet can be closer than
+     *     the best one found so far. Ties are broken by the order of the
+     *     StationTable, as in a scan of the whole table.
+     * </p>
+     * @param lat latitude of the point
+     * @param lon longitude of the point
+     * @param kind StationTable.LIGHTHOUSE or StationTable.DANGER
+     * @param excluded stations which are not considered, or null to consider all of them
+     * @return index of the closest station of that kind, or -1 if there is none
+     */
+    int nearest(double lat, double lon, byte kind, boolean[] excluded) {
+        if(!(lat >= Position.MIN_LATITUDE && lat <= Position.MAX_LATITUDE
+                && lon >= Position.MIN_LONGITUDE && lon <= Position.MAX_LONGITUDE)) {
+            //rings only bound the distance for points that lie on the grid
+            return nearestByScan(lat, lon, kind, excluded);
+        }
+        int centreRow = row(lat);
+        int centreColumn = column(lon);
+        int maxRing = Math.max(rows, columns);
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for(int ring = 0; ring <= maxRing; ring++) {
+            //every station outside of the rings searched so far is at least this far
+            if(best != -1 && bestDistance <= (ring - 1) * cellSize) {
+                break;
+            }
+            for(int r = centreRow - ring; r <= centreRow + ring; r++) {
+                if(r < 0 || r >= rows) continue;
+                boolean edgeRow = r == centreRow - ring || r == centreRow + ring;
+                for(int c = centreColumn - ring; c <= centreColumn + ring; c += edgeRow ? 1 : 2 * ring) {
+                    if(c >= 0 && c < columns) {
+                        int cell = r * columns + c;
+                        for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                            int station = cellStations[k];
+                            if(stations.kind[station] != kind || (excluded != null && excluded[station])) continue;
+                            double distance = stations.distance(station, lat, lon);
+                            if(distance < bestDistance || (distance == bestDistance && station < best)) {
+                                bestDistance = distance;
+                                best = station;
+                            }
+                        }
+                    }
+                    if(ring == 0) break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int nearestByScan(double lat, double lon, byte kind, boolean[] excluded) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for(int station = 0; station < stations.size; station++) {
+            if(stations.kind[station] != kind || (excluded != null && excluded[station])) continue;
+            double distance = stations.distance(station, lat, lon);
+            if(distance < bestDistance) {
+                bestDistance = distance;
+                best = station;
+            }
+        }
+        return best;
+    }
+}
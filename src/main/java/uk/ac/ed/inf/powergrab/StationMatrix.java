@@ -0,0 +1,202 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+/**
+ * <h1>
+ *     Distances and move counts between every two lighthouses of a map.
+ * </h1>
+ * <p>
+ *     The lighthouses of a map are numbered 0 to size - 1 in the order of
+ *     the StationTable (<code>node</code> and <code>station</code> convert
+ *     between the two), and the values between lighthouses a and b are at
+ *     <code>a * size + b</code> of two flat arrays: the Euclidean distance
+ *     as a float, and the number of moves as a short.
+ * </p>
+ * <p>
+ *     The number of moves is counted on the lattice of the drone rather than
+ *     estimated from the distance: it is the fewest moves, in the two
+ *     directions either side of the bearing of the target, after which the
+ *     drone is within the charging range of the target. These are the
+ *     directions a drone heading straight for the target uses, and no other
+ *     direction gets it closer in fewer moves.
+ * </p>
+ * <p>
+ *     The matrix only depends on the StationTable, so it is computed once per
+ *     map, with the rows in parallel, and shared by all games on that map.
+ *     Only the game which asks for it first computes it, and games on other
+ *     maps don't wait for it. Moves from the start of a game are computed by
+ *     the game with <code>moves(dLat, dLon)</code>.
+ * </p>
+ * <p>
+ *     The arrays grow with the square of the lighthouses, so they are only
+ *     kept for maps of up to MAX_STORED_LIGHTHOUSES lighthouses (24 MB).
+ *     On larger maps the values are computed each time they are read.
+ * </p>
+ */
+final class StationMatrix {
+    private static final double STEP = 0.0003;
+    private static final double RANGE_SQUARED = GameStateMap.CHARGING_RANGE * GameStateMap.CHARGING_RANGE;
+    private static final double SECTOR_ANGLE = 22.5;
+    static final int MAX_STORED_LIGHTHOUSES = 2048;
+    private static final Map<StationTable, CompletableFuture<StationMatrix>> CACHE = new WeakHashMap<>();
+    //directions by the angle of their change of latitude and longitude, which is not always
+    //the angle of their name: NNE moves at 22.5 degrees from E and ENE at 67.5, for example
+    private static final Direction[] BY_BEARING = new Direction[16];
+
+    static {
+        for(Direction d : Direction.values()) {
+            double angle = Math.toDegrees(Math.atan2(d.changeOfLatitude(), d.changeOfLongitude()));
+            BY_BEARING[(int) Math.round(angle / SECTOR_ANGLE) & 15] = d;
+        }
+    }
+
+    final int size;
+    //values between every two lighthouses, or null if they are computed when read
+    private final float[] distance;
+    private final short[] moves;
+    private final int[] stationOfNode;
+    private final int[] nodeOfStation;
+    private final double[] latitude;
+    private final double[] longitude;
+
+    StationMatrix(StationTable stations) {
+        this(stations, MAX_STORED_LIGHTHOUSES);
+    }
+
+    /**
+     * @param stations table of the map
+     * @param maxStored most lighthouses for which the values are computed up front and kept,
+     *                  as long as the arrays can hold them
+     */
+    StationMatrix(StationTable stations, int maxStored) {
+        nodeOfStation = new int[stations.size];
+        int lighthouses = 0;
+        for(int i = 0; i < stations.size; i++) {
+            nodeOfStation[i] = stations.isLighthouse(i) ? lighthouses++ : -1;
+        }
+        size = lighthouses;
+        stationOfNode = new int[size];
+        for(int i = 0; i < stations.size; i++) {
+            if(nodeOfStation[i] != -1) {
+                stationOfNode[nodeOfStation[i]] = i;
+            }
+        }
+        latitude = new double[size];
+        longitude = new double[size];
+        for(int a = 0; a < size; a++) {
+            latitude[a] = stations.latitude[stationOfNode[a]];
+            longitude[a] = stations.longitude[stationOfNode[a]];
+        }
+        if(size > maxStored || (long) size * size > Integer.MAX_VALUE) {
+            distance = null;
+            moves = null;
+            return;
+        }
+        distance = new float[size * size];
+        moves = new short[size * size];
+        IntStream.range(0, size).parallel().forEach(a -> {
+            for(int b = 0; b < size; b++) {
+                distance[a * size + b] = computeDistance(a, b);
+                moves[a * size + b] = computeMoves(a, b);
+            }
+        });
+    }
+
+    /**
+     * @return matrix of the lighthouses of a table, computed the first time it is asked for
+     */
+    static StationMatrix of(StationTable stations) {
+        CompletableFuture<StationMatrix> matrix;
+        boolean compute;
+        synchronized(CACHE) {
+            matrix = CACHE.get(stations);
+            compute = matrix == null;
+            if(compute) {
+                matrix = new CompletableFuture<>();
+                CACHE.put(stations, matrix);
+            }
+        }
+        if(compute) {
+            try {
+                matrix.complete(new StationMatrix(stations));
+            } catch (RuntimeException | Error e) {
+                synchronized(CACHE) {
+                    CACHE.remove(stations);
+                }
+                matrix.completeExceptionally(e);
+                throw e;
+            }
+        }
+        return matrix.join();
+    }
+
+    /**
+     * @return node of a station in the matrix, or -1 if it is not a lighthouse
+     */
+    int node(int station) {
+        return nodeOfStation[station];
+    }
+
+    int station(int node) {
+        return stationOfNode[node];
+    }
+
+    float distance(int fromNode, int toNode) {
+        return distance == null ? computeDistance(fromNode, toNode) : distance[fromNode * size + toNode];
+    }
+
+    int moves(int fromNode, int toNode) {
+        return moves == null ? computeMoves(fromNode, toNode) : moves[fromNode * size + toNode];
+    }
+
+    private float computeDistance(int fromNode, int toNode) {
+        return (float) Math.hypot(latitude[toNode] - latitude[fromNode], longitude[toNode] - longitude[fromNode]);
+    }
+
+    private short computeMoves(int fromNode, int toNode) {
+        return (short) Math.min(Short.MAX_VALUE, moves(latitude[toNode] - latitude[fromNode], longitude[toNode] - longitude[fromNode]));
+    }
+
+    /**
+     * <p>
+     *     Fewest moves after which the drone is within the charging range of
+     *     a target. Only the two directions either side of the bearing of the
+     *     target are used, a moves in one and k - a in the other, and k grows
+     *     from the lower bound given by the length of a move.
+     * </p>
+     * @param dLat latitude of the target minus latitude of the drone
+     * @param dLon longitude of the target minus longitude of the drone
+     * @return number of moves, 0 if the target is already in range
+     */
+    static int moves(double dLat, double dLon) {
+        double length = Math.hypot(dLat, dLon);
+        if(length <= GameStateMap.CHARGING_RANGE) {
+            return 0;
+        }
+        double angle = Math.toDegrees(Math.atan2(dLat, dLon));
+        if(angle < 0) {
+            angle += 360;
+        }
+        int sector = (int) Math.floor(angle / SECTOR_ANGLE) & 15;
+        Direction first = BY_BEARING[sector];
+        Direction second = BY_BEARING[(sector + 1) & 15];
+        double firstLat = first.changeOfLatitude();
+        double firstLon = first.changeOfLongitude();
+        double secondLat = second.changeOfLatitude();
+        double secondLon = second.changeOfLongitude();
+        int fewest = Math.max(1, (int) Math.floor((length - GameStateMap.CHARGING_RANGE) / STEP));
+        for(int k = fewest; ; k++) {
+            for(int a = 0; a <= k; a++) {
+                double lat = a * firstLat + (k - a) * secondLat - dLat;
+                double lon = a * firstLon + (k - a) * secondLon - dLon;
+                if(lat * lat + lon * lon <= RANGE_SQUARED) {
+                    return k;
+                }
+            }
+        }
+    }
+}
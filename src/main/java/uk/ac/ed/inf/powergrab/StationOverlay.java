@@ -0,0 +1,135 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * <h1>
+ *     Changes one game makes to the stations of a map.
+ * </h1>
+ * <p>
+ *     The StationTable of a map is never changed, so one table can be shared
+ *     by any number of games, also on different threads. Each game keeps what
+ *     it did to the stations in its own overlay: a bit for every lighthouse
+ *     it emptied and, only for the danger stations it was charged by, their
+ *     current coins and power. Stations which the game didn't touch cost
+ *     nothing, so an overlay stays small whatever the size of the map. The
+ *     charged stations are kept sorted, so the slot of one is found by a
+ *     binary search.
+ * </p>
+ * <p>
+ *     The overlay also logs the stations in the order the game first changed
+ *     them, so whoever keeps something derived from the stations (the plan
+ *     of the stateful drone, for example) can catch up with the changes
+ *     since it last looked instead of checking every station again.
+ * </p>
+ */
+class StationOverlay {
+    private final StationTable stations;
+    private final BitSet emptied = new BitSet();
+    private final BitSet charged = new BitSet();
+    //sorted by station, chargedCoins and chargedPower are in the same order
+    private int[] chargedStations = new int[8];
+    private double[] chargedCoins = new double[8];
+    private double[] chargedPower = new double[8];
+    private int chargedCount;
+    private int[] changes = new int[8];
+    private int changeCount;
+
+    StationOverlay(StationTable stations) {
+        this.stations = stations;
+    }
+
+    /**
+     * @return current coins of a station in this game
+     */
+    double coins(int station) {
+        if(emptied.get(station)) {
+            return 0;
+        }
+        return charged.get(station) ? chargedCoins[slot(station)] : stations.coins[station];
+    }
+
+    /**
+     * @return current power of a station in this game
+     */
+    double power(int station) {
+        if(emptied.get(station)) {
+            return 0;
+        }
+        return charged.get(station) ? chargedPower[slot(station)] : stations.power[station];
+    }
+
+    /**
+     * <p>
+     *     Records that the drone was in range of a station. A lighthouse is
+     *     emptied, and the given coins and power are added to a danger station.
+     * </p>
+     * @param station index of the station in the StationTable
+     * @param coins coins of the drone
+     * @param power power of the drone
+     */
+    void update(int station, double coins, double power) {
+        if(stations.isLighthouse(station)) {
+            if(!emptied.get(station)) {
+                emptied.set(station);
+                logChange(station);
+            }
+            return;
+        }
+        int slot;
+        if(charged.get(station)) {
+            slot = slot(station);
+        }
+        else {
+            if(chargedCount == chargedStations.length) {
+                int capacity = chargedCount * 2;
+                chargedStations = Arrays.copyOf(chargedStations, capacity);
+                chargedCoins = Arrays.copyOf(chargedCoins, capacity);
+                chargedPower = Arrays.copyOf(chargedPower, capacity);
+            }
+            slot = -Arrays.binarySearch(chargedStations, 0, chargedCount, station) - 1;
+            System.arraycopy(chargedStations, slot, chargedStations, slot + 1, chargedCount - slot);
+            System.arraycopy(chargedCoins, slot, chargedCoins, slot + 1, chargedCount - slot);
+            System.arraycopy(chargedPower, slot, chargedPower, slot + 1, chargedCount - slot);
+            chargedCount++;
+            charged.set(station);
+            logChange(station);
+            chargedStations[slot] = station;
+            chargedCoins[slot] = stations.coins[station];
+            chargedPower[slot] = stations.power[station];
+        }
+        chargedCoins[slot] += coins;
+        chargedPower[slot] += power;
+    }
+
+    /**
+     * @return number of stations changed so far, which only grows
+     */
+    int changes() {
+        return changeCount;
+    }
+
+    /**
+     * @param k index in the change log, from 0 to changes() - 1
+     * @return the k-th station the game changed
+     */
+    int change(int k) {
+        return changes[k];
+    }
+
+    private void logChange(int station) {
+        if(changeCount == changes.length) {
+            changes = Arrays.copyOf(changes, changeCount * 2);
+        }
+        changes[changeCount++] = station;
+    }
+
+    private int slot(int station) {
+        int slot = Arrays.binarySearch(chargedStations, 0, chargedCount, station);
+        if(slot < 0) {
+            throw new IllegalStateException("Station " + station + " has not been charged");
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,141 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * <h1>
+ *     Compiled table of the charging stations of a map.
+ * </h1>
+ * <p>
+ *     Stations are stored column by column in primitive arrays, so that
+ *     the drones can scan the map without going through Gson Features,
+ *     casting geometries or parsing the coins and power strings again
+ *     on every access. Stations keep the order in which they are in the
+ *     map, and can be found by their id with <code>indexOf</code>.
+ * </p>
+ * <p>
+ *     A table is never changed once it is built, its coins and power are
+ *     the ones in the map, so it can be shared by any number of games.
+ *     The changes made by a game are kept in a StationOverlay.
+ * </p>
+ */
+class StationTable {
+    static final byte LIGHTHOUSE = 0;
+    static final byte DANGER = 1;
+
+    final int size;
+    final String[] id;
+    final double[] latitude;
+    final double[] longitude;
+    final double[] coins;
+    final double[] power;
+    final byte[] kind;
+    final String[] color;
+    private final HashMap<String, Integer> indexById;
+
+    private StationTable(Builder builder) {
+        this.size = builder.size;
+        this.id = Arrays.copyOf(builder.id, size);
+        this.latitude = Arrays.copyOf(builder.latitude, size);
+        this.longitude = Arrays.copyOf(builder.longitude, size);
+        this.coins = Arrays.copyOf(builder.coins, size);
+        this.power = Arrays.copyOf(builder.power, size);
+        this.kind = Arrays.copyOf(builder.kind, size);
+        this.color = Arrays.copyOf(builder.color, size);
+        this.indexById = new HashMap<>(size * 2);
+        for(int i = 0; i < size; i++) {
+            indexById.putIfAbsent(id[i], i);
+        }
+    }
+
+    /**
+     * <p>
+     *     Finds the station with a given id.
+     * </p>
+     * @param stationId id of the station as it is in the map
+     * @return index of the station in the table, or -1 if there is no such station
+     */
+    int indexOf(String stationId) {
+        Integer index = indexById.get(stationId);
+        return index == null ? -1 : index;
+    }
+
+    boolean isLighthouse(int station) {
+        return kind[station] == LIGHTHOUSE;
+    }
+
+    /**
+     * <p>
+     *     Distance between a given point and a station, calculated the
+     *     same way as GameStateMap.calculateDistance.
+     * </p>
+     * @param station index of the station in the table
+     * @param lat latitude of the point
+     * @param lon longitude of the point
+     * @return distance between the point and the station
+     */
+    double distance(int station, double lat, double lon) {
+        return Math.hypot(lat - latitude[station], lon - longitude[station]);
+    }
+
+    Position position(int station) {
+        return new Position(latitude[station], longitude[station]);
+    }
+
+    /**
+     * <p>
+     *     Collects stations one by one while a map is being read,
+     *     growing its arrays as needed.
+     * </p>
+     */
+    static class Builder {
+        private int size;
+        private String[] id = new String[64];
+        private double[] latitude = new double[64];
+        private double[] longitude = new double[64];
+        private double[] coins = new double[64];
+        private double[] power = new double[64];
+        private byte[] kind = new byte[64];
+        private String[] color = new String[64];
+
+        /**
+         * <p>
+         *     Adds a station to the table. Any marker symbol other than
+         *     "lighthouse" makes it a danger station.
+         * </p>
+         */
+        Builder add(String stationId, double lat, double lon, double stationCoins, double stationPower,
+                    String markerSymbol, String markerColor) {
+            return add(stationId, lat, lon, stationCoins, stationPower,
+                    "lighthouse".equals(markerSymbol) ? LIGHTHOUSE : DANGER, markerColor);
+        }
+
+        Builder add(String stationId, double lat, double lon, double stationCoins, double stationPower,
+                    byte stationKind, String markerColor) {
+            if(size == id.length) {
+                int capacity = size * 2;
+                id = Arrays.copyOf(id, capacity);
+                latitude = Arrays.copyOf(latitude, capacity);
+                longitude = Arrays.copyOf(longitude, capacity);
+                coins = Arrays.copyOf(coins, capacity);
+                power = Arrays.copyOf(power, capacity);
+                kind = Arrays.copyOf(kind, capacity);
+                color = Arrays.copyOf(color, capacity);
+            }
+            id[size] = stationId;
+            latitude[size] = lat;
+            longitude[size] = lon;
+            coins[size] = stationCoins;
+            power[size] = stationPower;
+            kind[size] = stationKind;
+            color[size] = markerColor;
+            size++;
+            return this;
+        }
+
+        StationTable build() {
+            return new StationTable(this);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * <h1>
+ *     The lighthouses the stateful drone is still going to visit, in order.
+ * </h1>
+ * <p>
+ *     The plan is a doubly linked list over the indices of the stations, so
+ *     a station is added, removed from the front or removed from anywhere in
+ *     the plan without moving the others. Station <code>size</code> of the
+ *     arrays stands for both ends of the list, and a station which is not in
+ *     the plan has no previous station.
+ * </p>
+ * <p>
+ *     The plan follows the StationOverlay of its game: <code>repair</code>
+ *     reads the stations changed since it was last called from the change
+ *     log of the overlay, and removes the ones the drone emptied on the way
+ *     to somewhere else. Only the legs around a removed station change: the
+ *     station before it now leads to the one after it, and that new leg is
+ *     tried against the next few legs of the plan with 2-opt moves (reversing
+ *     the stations between them), counting the moves of each leg on the
+ *     lattice as the StationMatrix does. Only the few legs a repair looks at
+ *     are counted, so the plan doesn't need the matrix of the map, whose
+ *     computation grows with the square of its lighthouses, and a repair
+ *     costs the same whatever the size of the map. The head of the plan is
+ *     never reordered, only removed, since the drone may be on its way to it.
+ * </p>
+ */
+final class TourPlan {
+    //legs after a new one which it is tried against
+    private static final int WINDOW = 8;
+
+    private final StationTable stations;
+    private final StationOverlay overlay;
+    private final int end;
+    private final int[] next;
+    private final int[] previous;
+    private int size;
+    //entries of the change log of the overlay which were already repaired
+    private int repaired;
+
+    //statistics of all repairs
+    int removed;
+    int improvements;
+
+    /**
+     * <p>
+     *     Creates an empty plan for a game.
+     * </p>
+     * @param gameStateMap map of the game, whose changes the plan follows
+     */
+    TourPlan(GameStateMap gameStateMap) {
+        this.stations = gameStateMap.stations;
+        this.overlay = gameStateMap.overlay;
+        this.end = stations.size;
+        this.next = new int[end + 1];
+        this.previous = new int[end + 1];
+        Arrays.fill(previous, -1);
+        next[end] = end;
+        previous[end] = end;
+    }
+
+    /**
+     * <p>
+     *     Adds a lighthouse at the end of the plan.
+     * </p>
+     * @throws IllegalArgumentException if the station is not a lighthouse or is already in the plan
+     */
+    void add(int station) {
+        if(!stations.isLighthouse(station)) {
+            throw new IllegalArgumentException("Station " + station + " is not a lighthouse");
+        }
+        if(contains(station)) {
+            throw new IllegalArgumentException("Station " + station + " is already in the plan");
+        }
+        link(previous[end], station, end);
+        size++;
+    }
+
+    boolean contains(int station) {
+        return previous[station] != -1;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the next station to visit, or -1 if the plan is empty
+     */
+    int peek() {
+        return size == 0 ? -1 : next[end];
+    }
+
+    /**
+     * <p>
+     *     Removes the next station to visit.
+     * </p>
+     * @return the station removed
+     * @throws NoSuchElementException if the plan is empty
+     */
+    int remove() {
+        if(size == 0) {
+            throw new NoSuchElementException("The plan is empty");
+        }
+        int head = next[end];
+        unlink(head);
+        return head;
+    }
+
+    void clear() {
+        while(size > 0) {
+            remove();
+        }
+    }
+
+    /**
+     * @return the stations of the plan in the order they are visited
+     */
+    int[] toArray() {
+        int[] stationsInOrder = new int[size];
+        for(int k = 0, station = next[end]; station != end; station = next[station]) {
+            stationsInOrder[k++] = station;
+        }
+        return stationsInOrder;
+    }
+
+    /**
+     * <p>
+     *     Removes the stations the game changed since the last repair from
+     *     the plan, and improves the legs around each of them.
+     * </p>
+     * @return true if the head of the plan was removed, so the drone has a new target
+     */
+    boolean repair() {
+        int head = peek();
+        for(int changes = overlay.changes(); repaired < changes; repaired++) {
+            int station = overlay.change(repaired);
+            if(!contains(station)) {
+                continue;
+            }
+            int before = previous[station];
+            unlink(station);
+            removed++;
+            if(before != end) {
+                improveLegAfter(before);
+            }
+        }
+        return peek() != head;
+    }
+
+    /**
+     * <p>
+     *     Tries the leg from a station to the one after it against the next
+     *     legs of the plan: if going from the station to the start of a
+     *     later leg, back through the stations in between and on to the end
+     *     of that leg takes fewer moves, the stations in between are reversed.
+     * </p>
+     */
+    private void improveLegAfter(int a) {
+        int b = next[a];
+        if(b == end) {
+            return;
+        }
+        int ab = moves(a, b);
+        int c = next[b];
+        for(int k = 0; k < WINDOW && c != end; k++) {
+            int d = next[c];
+            if(moves(a, c) + moves(b, d) < ab + moves(c, d)) {
+                reverse(a, b, c, d);
+                improvements++;
+                return;
+            }
+            c = d;
+        }
+    }
+
+    /**
+     * <p>
+     *     Reverses the stations from b to c, which lie between a and d.
+     * </p>
+     */
+    private void reverse(int a, int b, int c, int d) {
+        for(int station = b; ; ) {
+            int following = next[station];
+            next[station] = previous[station];
+            previous[station] = following;
+            if(station == c) {
+                break;
+            }
+            station = following;
+        }
+        next[a] = c;
+        previous[c] = a;
+        next[b] = d;
+        previous[d] = b;
+    }
+
+    /**
+     * @return moves from one station until the drone is in range of another, 0 to the end of the plan
+     */
+    private int moves(int from, int to) {
+        if(to == end) {
+            return 0;
+        }
+        return StationMatrix.moves(stations.latitude[to] - stations.latitude[from],
+                stations.longitude[to] - stations.longitude[from]);
+    }
+
+    private void link(int before, int station, int after) {
+        next[before] = station;
+        previous[station] = before;
+        next[station] = after;
+        previous[after] = station;
+    }
+
+    private void unlink(int station) {
+        int before = previous[station];
+        int after = next[station];
+        next[before] = after;
+        previous[after] = before;
+        previous[station] = -1;
+        size--;
+    }
+}
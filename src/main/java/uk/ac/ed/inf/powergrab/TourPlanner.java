@@ -0,0 +1,243 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * <h1>
+ *     Improves the order in which the stateful drone visits the lighthouses.
+ * </h1>
+ * <p>
+ *     The drone only has 250 moves, so a tour is scored by the coins of the
+ *     lighthouses it reaches within them, and of two tours reaching as many
+ *     coins the one with fewer moves in total is better. The moves between
+ *     two lighthouses are read from the StationMatrix of the map, and the
+ *     moves from the start of the drone to each lighthouse of the tour are
+ *     counted once in the same way, so scoring a tour is a walk over them.
+ * </p>
+ * <p>
+ *     The planner starts from a given tour, usually the greedy one of the
+ *     drone, and applies 2-opt moves (reversing a part of the tour) and
+ *     Or-opt moves (moving one to three consecutive lighthouses elsewhere in
+ *     the tour) as long as they make the tour better. It stops when no such
+ *     move is left or when its time budget runs out, and either way returns
+ *     the best tour it has, so it can be given any budget.
+ * </p>
+ */
+final class TourPlanner {
+    static final int MOVE_LIMIT = 250;
+    private static final double EPSILON = 1e-9;
+    private static final int CLOCK_CHECK_INTERVAL = 64;
+    private static final int MAX_SEGMENT = 3;
+
+    private final long budgetNanos;
+
+    //statistics of the last plan
+    double initialCoins;
+    int initialMoves;
+    double plannedCoins;
+    int plannedMoves;
+    int improvements;
+    boolean timedOut;
+
+    //state of the plan being improved, position k of the tour is k + 1 in order, 0 is the start
+    private StationMatrix matrix;
+    private int[] node;
+    private int[] startMoves;
+    private double[] coins;
+    private int[] order;
+    private int[] candidate;
+    private double bestCoins;
+    private int bestMoves;
+    private int evaluatedMoves;
+    private long deadline;
+    private int evaluations;
+
+    /**
+     * @param budgetNanos time after which the planner returns the best tour it has
+     */
+    TourPlanner(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * <p>
+     *     Creates the planner configured by the system property
+     *     <code>powergrab.planner.budgetMillis</code> (0, the default, turns it off).
+     * </p>
+     * @return planner, or null if it is turned off
+     */
+    static TourPlanner fromSystemProperties() {
+        long budgetMillis = Long.getLong("powergrab.planner.budgetMillis", 0);
+        return budgetMillis > 0 ? new TourPlanner(budgetMillis * 1_000_000L) : null;
+    }
+
+    /**
+     * <p>
+     *     Improves a tour until no 2-opt or Or-opt move makes it better or the budget runs out.
+     * </p>
+     * @param gameStateMap map of the game, the coins of its stations are the ones the tour is scored with
+     * @param startLatitude latitude where the drone starts the tour
+     * @param startLongitude longitude where the drone starts the tour
+     * @param tour indices of the lighthouses in the order they are visited
+     * @return the same lighthouses in the best order found
+     * @throws IllegalArgumentException if some station of the tour is not a lighthouse
+     */
+    int[] improve(GameStateMap gameStateMap, double startLatitude, double startLongitude, int[] tour) {
+        deadline = System.nanoTime() + budgetNanos;
+        timedOut = false;
+        improvements = 0;
+        evaluations = 0;
+        int planned = tour.length;
+        readTour(gameStateMap, startLatitude, startLongitude, tour);
+
+        order = new int[planned];
+        candidate = new int[planned];
+        for(int k = 0; k < planned; k++) {
+            order[k] = k + 1;
+        }
+        bestCoins = score(order);
+        bestMoves = evaluatedMoves;
+        initialCoins = bestCoins;
+        initialMoves = bestMoves;
+
+        boolean improved = true;
+        while(improved && !timedOut) {
+            improved = twoOptPass() | orOptPass();
+        }
+
+        plannedCoins = bestCoins;
+        plannedMoves = bestMoves;
+        int[] result = new int[planned];
+        for(int k = 0; k < planned; k++) {
+            result[k] = tour[order[k] - 1];
+        }
+        return result;
+    }
+
+    private void readTour(GameStateMap gameStateMap, double startLatitude, double startLongitude, int[] tour) {
+        StationTable stations = gameStateMap.stations;
+        matrix = StationMatrix.of(stations);
+        node = new int[tour.length + 1];
+        startMoves = new int[tour.length + 1];
+        coins = new double[tour.length + 1];
+        for(int k = 1; k <= tour.length; k++) {
+            int station = tour[k - 1];
+            node[k] = matrix.node(station);
+            if(node[k] == -1) {
+                throw new IllegalArgumentException("Station " + station + " of the tour is not a lighthouse");
+            }
+            startMoves[k] = StationMatrix.moves(stations.latitude[station] - startLatitude,
+                    stations.longitude[station] - startLongitude);
+            coins[k] = gameStateMap.coins(station);
+        }
+    }
+
+    /**
+     * @return coins reached within MOVE_LIMIT moves, the moves of the whole tour are left in evaluatedMoves
+     */
+    private double score(int[] route) {
+        double reached = 0;
+        int total = 0;
+        int previous = 0;
+        for(int k : route) {
+            total += previous == 0 ? startMoves[k] : matrix.moves(node[previous], node[k]);
+            if(total <= MOVE_LIMIT) {
+                reached += coins[k];
+            }
+            previous = k;
+        }
+        evaluatedMoves = total;
+        return reached;
+    }
+
+    /**
+     * <p>
+     *     Keeps the candidate route if it is better than the current one.
+     * </p>
+     * @return true if the candidate was kept
+     */
+    private boolean offer() {
+        if(++evaluations % CLOCK_CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+            timedOut = true;
+        }
+        double reached = score(candidate);
+        boolean better = reached > bestCoins + EPSILON
+                || (reached > bestCoins - EPSILON && evaluatedMoves < bestMoves);
+        if(better) {
+            int[] previous = order;
+            order = candidate;
+            candidate = previous;
+            bestCoins = reached;
+            bestMoves = evaluatedMoves;
+            improvements++;
+        }
+        return better;
+    }
+
+    /**
+     * <p>
+     *     Tries to reverse every part order[i..j] of the tour.
+     * </p>
+     */
+    private boolean twoOptPass() {
+        boolean improved = false;
+        int length = order.length;
+        for(int i = 0; i < length - 1 && !timedOut; i++) {
+            for(int j = i + 1; j < length && !timedOut; j++) {
+                System.arraycopy(order, 0, candidate, 0, length);
+                for(int a = i, b = j; a < b; a++, b--) {
+                    int node = candidate[a];
+                    candidate[a] = candidate[b];
+                    candidate[b] = node;
+                }
+                improved |= offer();
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * <p>
+     *     Tries to move every part of one to three stations order[i..i+size-1]
+     *     so that it starts at every other place in the tour.
+     * </p>
+     */
+    private boolean orOptPass() {
+        boolean improved = false;
+        int length = order.length;
+        for(int size = 1; size <= MAX_SEGMENT; size++) {
+            for(int i = 0; i + size <= length && !timedOut; i++) {
+                for(int to = 0; to + size <= length && !timedOut; to++) {
+                    if(to == i) {
+                        continue;
+                    }
+                    moveSegment(i, size, to);
+                    improved |= offer();
+                }
+            }
+        }
+        return improved;
+    }
+
+    /**
+     * <p>
+     *     Fills the candidate with the current order where the part of a given
+     *     size starting at from is moved to start at to instead.
+     * </p>
+     */
+    private void moveSegment(int from, int size, int to) {
+        int length = order.length;
+        int written = 0;
+        for(int k = 0; k < length; k++) {
+            if(written == to) {
+                System.arraycopy(order, from, candidate, written, size);
+                written += size;
+            }
+            if(k >= from && k < from + size) {
+                continue;
+            }
+            candidate[written++] = order[k];
+        }
+        if(written == to) {
+            System.arraycopy(order, from, candidate, written, size);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+public class BatchRunnerTest extends TestCase {
+    private static final String STATEFUL = "17 09 2019 55.944425 -3.188396 5678 stateful";
+    private static final String STATELESS = "17 09 2019 55.944425 -3.188396 5678 stateless";
+
+    private Path directory;
+    private MapCache cache;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("powergrab-batch");
+        Path cacheDirectory = Files.createDirectory(directory.resolve("cache"));
+        byte[] fixture = TestMaps.readFixture("2019-09-17");
+        Files.write(cacheDirectory.resolve("2019-09-17.geojson"), fixture);
+        Files.write(cacheDirectory.resolve("2019-09-17.sha256"), MapCache.sha256(fixture).getBytes(StandardCharsets.US_ASCII));
+        cache = new MapCache(cacheDirectory, MapCache.DEFAULT_MAX_BYTES, "http://127.0.0.1:1", true);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestMaps.deleteRecursively(directory);
+    }
+
+    private List<String[]> manifest(String... lines) throws IOException {
+        Path manifest = directory.resolve("manifest.txt");
+        Files.write(manifest, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return BatchRunner.readManifest(manifest);
+    }
+
+    private static void assertSameFile(Path expected, Path actual) throws IOException {
+        assertTrue(actual + " differs from " + expected, Arrays.equals(Files.readAllBytes(expected), Files.readAllBytes(actual)));
+    }
+
+    public void testManifestSkipsCommentsAndEmptyLines() throws IOException {
+        List<String[]> runs = manifest("# games of 17/09", "", STATEFUL, "   ", "  " + STATELESS);
+        assertEquals(2, runs.size());
+        assertEquals("stateless", runs.get(1)[6]);
+    }
+
+    public void testManifestWithIncorrectLineIsRejected() {
+        try {
+            manifest(STATEFUL, "17 09 2019 55.944425 -3.188396 5678 careful");
+            fail("a line with an unknown drone type must be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("line 2"));
+        }
+    }
+
+    public void testGamesMatchSingleGames() throws IOException {
+        Path single = Files.createDirectory(directory.resolve("single"));
+        for(String line : new String[]{STATEFUL, STATELESS}) {
+            try(Game game = new Game(line.split(" "), single, cache, new GameStateMap(MapCacheTest.DATE, null, cache), null)) {
+                game.play();
+            }
+        }
+
+        BatchRunner.Report report;
+        try(BatchRunner runner = new BatchRunner(cache, directory.resolve("batch"), 3)) {
+            report = runner.run(manifest(STATEFUL, STATELESS, STATEFUL, STATELESS));
+        }
+        assertTrue(report.failed.isEmpty());
+        assertEquals(4, report.finished.size());
+        for(String run : new String[]{"run-0001", "run-0003"}) {
+            assertSameFile(single.resolve("stateful-17-09-2019.txt"), report.finished.get(run).resolve("stateful-17-09-2019.txt"));
+            assertSameFile(single.resolve("stateful-17-09-2019.geojson"), report.finished.get(run).resolve("stateful-17-09-2019.geojson"));
+        }
+        for(String run : new String[]{"run-0002", "run-0004"}) {
+            assertSameFile(single.resolve("stateless-17-09-2019.txt"), report.finished.get(run).resolve("stateless-17-09-2019.txt"));
+            assertSameFile(single.resolve("stateless-17-09-2019.geojson"), report.finished.get(run).resolve("stateless-17-09-2019.geojson"));
+        }
+    }
+
+    public void testMissingMapFailsOnlyItsGames() throws IOException {
+        BatchRunner.Report report;
+        try(BatchRunner runner = new BatchRunner(cache, directory.resolve("batch"), 2)) {
+            report = runner.run(manifest(STATEFUL, "18 09 2019 55.944425 -3.188396 5678 stateful"));
+        }
+        assertTrue(report.finished.containsKey("run-0001"));
+        assertTrue(report.failed.get("run-0002") instanceof IOException);
+    }
+}
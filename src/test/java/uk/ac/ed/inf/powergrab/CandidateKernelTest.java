@@ -0,0 +1,69 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class CandidateKernelTest extends TestCase {
+    private static final double RANGE = GameStateMap.CHARGING_RANGE;
+
+    public void testMatchesScanWithHypot() {
+        Random random = new Random(17);
+        int stations = 200;
+        double[] lat = new double[stations];
+        double[] lon = new double[stations];
+        byte[] kind = new byte[stations];
+        CandidateKernel kernel = new CandidateKernel(16, stations);
+        for(int c = 0; c < 16; c++) {
+            kernel.candidateLatitude[c] = 55.944 + random.nextDouble() * 0.001;
+            kernel.candidateLongitude[c] = -3.189 + random.nextDouble() * 0.001;
+        }
+        for(int j = 0; j < stations; j++) {
+            lat[j] = 55.944 + random.nextDouble() * 0.001;
+            lon[j] = -3.189 + random.nextDouble() * 0.001;
+            kind[j] = (byte) random.nextInt(3);
+            kernel.addStation(j, lat[j], lon[j], kind[j]);
+        }
+        kernel.run(RANGE * RANGE);
+
+        for(int c = 0; c < 16; c++) {
+            int inRange = 0;
+            int green = -1;
+            int red = -1;
+            for(int j = 0; j < stations; j++) {
+                double distance = Math.hypot(kernel.candidateLatitude[c] - lat[j], kernel.candidateLongitude[c] - lon[j]);
+                if(distance > RANGE) {
+                    continue;
+                }
+                inRange++;
+                if(kind[j] == CandidateKernel.GREEN && (green == -1 || distance < Math.hypot(kernel.candidateLatitude[c] - lat[green], kernel.candidateLongitude[c] - lon[green]))) {
+                    green = j;
+                }
+                if(kind[j] == CandidateKernel.RED && (red == -1 || distance < Math.hypot(kernel.candidateLatitude[c] - lat[red], kernel.candidateLongitude[c] - lon[red]))) {
+                    red = j;
+                }
+            }
+            assertEquals(inRange, kernel.inRange[c]);
+            assertEquals(green, kernel.nearestGreen[c]);
+            assertEquals(red, kernel.nearestRed[c]);
+        }
+    }
+
+    public void testTiesGoToFirstStation() {
+        CandidateKernel kernel = new CandidateKernel(1, 3);
+        kernel.candidateLatitude[0] = 55.944;
+        kernel.candidateLongitude[0] = -3.189;
+        kernel.addStation(7, 55.9441, -3.189, CandidateKernel.OTHER);
+        kernel.addStation(3, 55.9441, -3.189, CandidateKernel.GREEN);
+        kernel.addStation(5, 55.9441, -3.189, CandidateKernel.GREEN);
+        kernel.run(RANGE * RANGE);
+        assertEquals(3, kernel.nearestGreen[0]);
+        assertEquals(-1, kernel.nearestRed[0]);
+        assertEquals(3, kernel.inRange[0]);
+
+        kernel.clearStations();
+        kernel.run(RANGE * RANGE);
+        assertEquals(-1, kernel.nearestGreen[0]);
+        assertEquals(0, kernel.inRange[0]);
+    }
+}
@@ -0,0 +1,61 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class DirectionTest extends TestCase {
+    private static final Direction[] ANTICLOCKWISE = {Direction.E, Direction.ENE, Direction.NE, Direction.NNE,
+            Direction.N, Direction.NNW, Direction.NW, Direction.WNW, Direction.W, Direction.WSW, Direction.SW,
+            Direction.SSW, Direction.S, Direction.SSE, Direction.SE, Direction.ESE};
+
+    /**
+     * The ranges of the directions written out one by one.
+     */
+    private static Direction byRanges(double angle) {
+        if(angle < 0) angle += 360;
+        for(int i = 1; i < 16; i++) {
+            if(angle > i * 22.5 - 11.25 && angle <= i * 22.5 + 11.25) {
+                return ANTICLOCKWISE[i];
+            }
+        }
+        return Direction.E;
+    }
+
+    public void testAnticlockwiseAngles() {
+        for(int i = 0; i < 16; i++) {
+            assertEquals(i * 22.5, ANTICLOCKWISE[i].toAnticlockwiseAngle());
+        }
+    }
+
+    public void testAngleOnRangeBoundaries() {
+        for(int i = 0; i < 16; i++) {
+            double boundary = i * 22.5 + 11.25;
+            for(double angle : new double[]{boundary, Math.nextUp(boundary), Math.nextDown(boundary),
+                    boundary - 360, Math.nextUp(boundary - 360), i * 22.5}) {
+                assertEquals("angle " + angle, byRanges(angle), Direction.fromAnticlockwiseAngle(angle));
+            }
+        }
+    }
+
+    public void testRandomAngles() {
+        Random random = new Random(5678);
+        for(int i = 0; i < 100000; i++) {
+            double angle = random.nextDouble() * 720 - 360;
+            assertEquals("angle " + angle, byRanges(angle), Direction.fromAnticlockwiseAngle(angle));
+        }
+        assertEquals(Direction.E, Direction.fromAnticlockwiseAngle(Double.NaN));
+        assertEquals(Direction.E, Direction.fromAnticlockwiseAngle(400));
+    }
+
+    public void testRotateMatchesAngleArithmetic() {
+        for(Direction d : Direction.values()) {
+            double angle = d.toAnticlockwiseAngle();
+            assertEquals(byRanges((angle + 90) % 360), d.rotate(4));
+            assertEquals(byRanges((angle - 90) % 360), d.rotate(-4));
+            assertEquals(byRanges((angle - 180) % 360), d.rotate(8));
+            assertEquals(byRanges(angle - 30), d.rotate(-1));
+            assertEquals(d, d.rotate(16));
+        }
+    }
+}
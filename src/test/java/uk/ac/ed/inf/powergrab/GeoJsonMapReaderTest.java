@@ -0,0 +1,51 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public class GeoJsonMapReaderTest extends TestCase {
+
+    private static StationTable read(String json) throws IOException {
+        return GeoJsonMapReader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void testReadsFixtureMap() throws IOException {
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        assertEquals(50, stations.size);
+        assertEquals("c56a-8de0-de38-c779-e8b3-0c56", stations.id[0]);
+        assertEquals(55.944787, stations.latitude[0]);
+        assertEquals(-3.1857627, stations.longitude[0]);
+        assertEquals(94.35981581551023, stations.coins[0]);
+        assertTrue(stations.isLighthouse(0));
+        assertEquals(0, stations.indexOf("c56a-8de0-de38-c779-e8b3-0c56"));
+    }
+
+    public void testStringAndNumberValuesAndUnknownMembers() throws IOException {
+        StationTable stations = read("{\"type\":\"FeatureCollection\",\"date-generated\":\"x\",\"features\":["
+                + "{\"type\":\"Feature\",\"properties\":{\"id\":\"a\",\"coins\":\"-12.5\",\"power\":-3,\"marker-symbol\":\"danger\",\"extra\":[1,{\"x\":2}]},"
+                + "\"geometry\":{\"coordinates\":[-3.19,55.944],\"type\":\"Point\"}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[-3.19,55.944],[-3.18,55.945]]},\"properties\":{}},"
+                + "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3.188,55.945]},"
+                + "\"properties\":{\"id\":\"b\",\"coins\":7,\"power\":\"8\",\"marker-symbol\":\"lighthouse\",\"marker-color\":\"#00ff00\"}}]}");
+        assertEquals(2, stations.size);
+        assertEquals(-12.5, stations.coins[0]);
+        assertEquals(-3.0, stations.power[0]);
+        assertEquals(StationTable.DANGER, stations.kind[0]);
+        assertEquals(55.944, stations.latitude[0]);
+        assertEquals(1, stations.indexOf("b"));
+        assertEquals(8.0, stations.power[1]);
+        assertEquals("#00ff00", stations.color[1]);
+    }
+
+    public void testStationWithoutIdIsRejected() {
+        try {
+            read("{\"features\":[{\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]},\"properties\":{\"marker-symbol\":\"danger\"}}]}");
+            fail("a station must have an id");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
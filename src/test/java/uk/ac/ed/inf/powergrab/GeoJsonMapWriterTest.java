@@ -0,0 +1,59 @@
+package uk.ac.ed.inf.powergrab;
+
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class GeoJsonMapWriterTest extends TestCase {
+    private StationTable stations;
+
+    @Override
+    protected void setUp() throws Exception {
+        stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+    }
+
+    private static String write(StationTable stations, List<Position> path) throws IOException {
+        StringWriter out = new StringWriter();
+        GeoJsonMapWriter.write(stations, path, out);
+        return out.toString();
+    }
+
+    public void testSameOutputAsMapbox() throws IOException {
+        List<Position> path = Arrays.asList(new Position(55.944425, -3.188396),
+                new Position(55.944425, -3.188396).nextPosition(Direction.NNE));
+        List<Feature> features = new ArrayList<>();
+        for(int i = 0; i < stations.size; i++) {
+            Feature f = Feature.fromGeometry(Point.fromLngLat(stations.longitude[i], stations.latitude[i]));
+            f.addStringProperty("id", stations.id[i]);
+            f.addNumberProperty("coins", stations.coins[i]);
+            f.addNumberProperty("power", stations.power[i]);
+            f.addStringProperty("marker-symbol", stations.isLighthouse(i) ? "lighthouse" : "danger");
+            f.addStringProperty("marker-color", stations.color[i]);
+            features.add(f);
+        }
+        List<Point> points = new ArrayList<>();
+        for(Position p : path) {
+            points.add(Point.fromLngLat(p.longitude, p.latitude));
+        }
+        features.add(Feature.fromGeometry(LineString.fromLngLats(points)));
+        assertEquals(FeatureCollection.fromFeatures(features).toJson(), write(stations, path));
+    }
+
+    public void testWrittenMapCanBeReadBack() throws IOException {
+        StationTable read = GeoJsonMapReader.read(new ByteArrayInputStream(write(stations, null).getBytes("UTF-8")));
+        assertEquals(stations.size, read.size);
+        assertTrue(Arrays.equals(stations.id, read.id));
+        assertTrue(Arrays.equals(stations.coins, read.coins));
+        assertTrue(Arrays.equals(stations.kind, read.kind));
+        assertTrue(Arrays.equals(stations.color, read.color));
+    }
+}
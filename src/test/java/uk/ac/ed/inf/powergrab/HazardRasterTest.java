@@ -0,0 +1,86 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.lang.ref.WeakReference;
+import java.util.Random;
+
+public class HazardRasterTest extends TestCase {
+
+    /**
+     * @return the rule checked against every station of the map
+     */
+    private static boolean isSafe(StationTable stations, double lat, double lon) {
+        double red = Double.POSITIVE_INFINITY;
+        double green = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < stations.size; i++) {
+            double distance = stations.distance(i, lat, lon);
+            if(distance > GameStateMap.CHARGING_RANGE) {
+                continue;
+            }
+            if(stations.kind[i] == StationTable.DANGER) {
+                red = Math.min(red, distance);
+            }
+            else {
+                green = Math.min(green, distance);
+            }
+        }
+        return red == Double.POSITIVE_INFINITY || green < red;
+    }
+
+    public void testSameAsRuleEverywhere() {
+        for(int count : new int[]{50, 500}) {
+            GameStateMap map = TestMaps.randomMap(count, count, true, 10);
+            HazardRaster raster = new HazardRaster(map.stations);
+            int[] nearby = new int[map.stations.size];
+            Random random = new Random(1);
+            for(int k = 0; k < 100_000; k++) {
+                //a little outside of the play area too
+                double lat = Position.MIN_LATITUDE - 0.0003 + random.nextDouble() * (Position.MAX_LATITUDE - Position.MIN_LATITUDE + 0.0006);
+                double lon = Position.MIN_LONGITUDE - 0.0003 + random.nextDouble() * (Position.MAX_LONGITUDE - Position.MIN_LONGITUDE + 0.0006);
+                assertEquals(isSafe(map.stations, lat, lon), raster.isSafe(map, lat, lon, nearby));
+            }
+        }
+    }
+
+    public void testSameAsRuleOnEdgesOfRanges() {
+        GameStateMap map = TestMaps.randomMap(500, 500, true, 10);
+        HazardRaster raster = new HazardRaster(map.stations);
+        int[] nearby = new int[map.stations.size];
+        Random random = new Random(2);
+        for(int i = 0; i < map.stations.size; i++) {
+            for(int k = 0; k < 200; k++) {
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double distance = GameStateMap.CHARGING_RANGE + (random.nextDouble() - 0.5) * 2e-12;
+                double lat = map.stations.latitude[i] + distance * Math.sin(angle);
+                double lon = map.stations.longitude[i] + distance * Math.cos(angle);
+                assertEquals(isSafe(map.stations, lat, lon), raster.isSafe(map, lat, lon, nearby));
+            }
+        }
+    }
+
+    public void testMostCellsAreNotMixed() {
+        GameStateMap map = TestMaps.randomMap(50, 50, true, 10);
+        HazardRaster raster = HazardRaster.of(map);
+        assertSame(raster, HazardRaster.of(new GameStateMap(map, (Random) null)));
+        int mixed = 0;
+        for(int row = 0; row < raster.rows; row++) {
+            for(int column = 0; column < raster.columns; column++) {
+                mixed += raster.isMixed(row, column) ? 1 : 0;
+            }
+        }
+        assertTrue(mixed + " mixed cells", mixed < raster.rows * raster.columns / 10);
+    }
+
+    public void testCacheDoesNotKeepTheMapAlive() throws InterruptedException {
+        GameStateMap map = TestMaps.randomMap(50, 50, true, 10);
+        HazardRaster.of(map);
+        WeakReference<StationTable> stations = new WeakReference<>(map.stations);
+        map = null;
+        for(int k = 0; k < 50 && stations.get() != null; k++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(stations.get());
+    }
+}
@@ -0,0 +1,68 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class LatticeTest extends TestCase {
+    private static final Position START = new Position(55.944425, -3.188396);
+
+    public void testOppositeDirectionsCancelOut() {
+        for(Direction d : Direction.values()) {
+            assertEquals(Lattice.ORIGIN, Lattice.next(Lattice.next(Lattice.ORIGIN, d), d.rotate(8)));
+        }
+    }
+
+    public void testSamePointWhateverTheOrderOfMoves() {
+        Direction[] moves = {Direction.NNE, Direction.W, Direction.SE, Direction.NNE, Direction.S, Direction.WSW};
+        long forwards = Lattice.ORIGIN;
+        long backwards = Lattice.ORIGIN;
+        for(int i = 0; i < moves.length; i++) {
+            forwards = Lattice.next(forwards, moves[i]);
+            backwards = Lattice.next(backwards, moves[moves.length - 1 - i]);
+        }
+        assertEquals(forwards, backwards);
+        assertEquals(2, Lattice.steps(forwards, Direction.NNE.ordinal()));
+        assertEquals(-1, Lattice.steps(forwards, Direction.E.ordinal()));
+        assertEquals(-1, Lattice.steps(forwards, Direction.N.ordinal()));
+    }
+
+    public void testRandomWalkMatchesPositionArithmetic() {
+        Lattice lattice = new Lattice(START);
+        Random random = new Random(5678);
+        Direction[] directions = Direction.values();
+        long point = Lattice.ORIGIN;
+        Position position = START;
+        for(int i = 0; i < 250; i++) {
+            Direction d = directions[random.nextInt(directions.length)];
+            point = Lattice.next(point, d);
+            position = position.nextPosition(d);
+            assertEquals(position.latitude, lattice.latitude(point), 1e-12);
+            assertEquals(position.longitude, lattice.longitude(point), 1e-12);
+            assertEquals(position.inPlayArea(), lattice.inPlayArea(point));
+        }
+        double dLat = position.latitude - START.latitude;
+        double dLon = position.longitude - START.longitude;
+        assertEquals(dLat * dLat + dLon * dLon, lattice.distanceSquared(point, START.latitude, START.longitude), 1e-15);
+    }
+
+    public void testAxisOutOfRangeIsRejected() {
+        long point = Lattice.ORIGIN;
+        for(int i = 0; i < 127; i++) {
+            point = Lattice.next(point, Direction.NE);
+        }
+        assertEquals(127, Lattice.steps(point, Direction.NE.ordinal()));
+        try {
+            Lattice.next(point, Direction.NE);
+            fail("128 steps don't fit in a byte");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        for(int i = 0; i < 255; i++) {
+            point = Lattice.next(point, Direction.SW);
+        }
+        assertEquals(-128, Lattice.steps(point, Direction.NE.ordinal()));
+        assertEquals(0, Lattice.steps(point, Direction.N.ordinal()));
+        assertEquals(0, Lattice.steps(point, Direction.ENE.ordinal()));
+    }
+}
@@ -0,0 +1,142 @@
+package uk.ac.ed.inf.powergrab;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests of MapCache against a local stand-in for the map server.
+ */
+public class MapCacheTest extends TestCase {
+    static final String[] DATE = {"17", "09", "2019"};
+
+    private HttpServer server;
+    private AtomicInteger requests;
+    private Path directory;
+    private byte[] fixture;
+
+    @Override
+    protected void setUp() throws Exception {
+        fixture = TestMaps.readFixture("2019-09-17");
+        requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            boolean known = exchange.getRequestURI().getPath().equals("/2019/09/17/powergrabmap.geojson");
+            exchange.sendResponseHeaders(known ? 200 : 404, known ? fixture.length : -1);
+            try(OutputStream out = exchange.getResponseBody()) {
+                if(known) out.write(fixture);
+            }
+        });
+        server.start();
+        directory = Files.createTempDirectory("powergrab-cache");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        TestMaps.deleteRecursively(directory);
+    }
+
+    private MapCache cache(long maxBytes, boolean offline) {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new MapCache(directory, maxBytes, url, offline);
+    }
+
+    public void testDownloadsOnceThenServesFromCache() throws IOException {
+        MapCache cache = cache(MapCache.DEFAULT_MAX_BYTES, false);
+        String first = cache.load(DATE);
+        String second = cache.load(new String[]{"17", "9", "2019"});
+        assertEquals(new String(fixture, StandardCharsets.UTF_8), first);
+        assertEquals(first, second);
+        assertEquals(1, requests.get());
+        assertTrue(Files.exists(directory.resolve("2019-09-17.geojson")));
+    }
+
+    public void testOfflineReadsPrePopulatedCache() throws IOException {
+        Files.write(directory.resolve("2019-09-17.geojson"), fixture);
+        Files.write(directory.resolve("2019-09-17.sha256"), MapCache.sha256(fixture).getBytes(StandardCharsets.US_ASCII));
+        GameStateMap map = new GameStateMap(DATE, new Random(5678), cache(MapCache.DEFAULT_MAX_BYTES, true));
+        assertEquals(50, map.stations.size);
+        assertEquals(0, requests.get());
+    }
+
+    public void testCompiledMapIsReusedUntilTheMapChanges() throws IOException {
+        MapCache cache = cache(MapCache.DEFAULT_MAX_BYTES, false);
+        Path compiled = cache.fetchCompiled(DATE);
+        assertEquals(directory.resolve("2019-09-17.pgmap"), compiled);
+        assertEquals(50, PgMapFile.read(compiled).size);
+        FileTime compiledAt = FileTime.fromMillis(1000);
+        Files.setLastModifiedTime(compiled, compiledAt);
+        cache.fetchCompiled(DATE);
+        assertEquals(compiledAt, Files.getLastModifiedTime(compiled));
+
+        byte[] oneStation = "{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3.19,55.944]},\"properties\":{\"id\":\"a\",\"coins\":\"1\",\"power\":\"2\",\"marker-symbol\":\"lighthouse\"}}]}".getBytes(StandardCharsets.UTF_8);
+        cache.store("2019-09-17", oneStation);
+        assertEquals(1, PgMapFile.read(cache.fetchCompiled(DATE)).size);
+        assertEquals(1, requests.get());
+    }
+
+    public void testOfflineMissFails() {
+        try {
+            cache(MapCache.DEFAULT_MAX_BYTES, true).load(DATE);
+            fail("offline cache must not download");
+        } catch (IOException e) {
+            assertEquals(0, requests.get());
+        }
+    }
+
+    public void testCorruptEntryIsDownloadedAgain() throws IOException {
+        MapCache cache = cache(MapCache.DEFAULT_MAX_BYTES, false);
+        cache.load(DATE);
+        Files.write(directory.resolve("2019-09-17.geojson"), "{\"type\":\"FeatureCollection\"".getBytes(StandardCharsets.UTF_8));
+        assertEquals(new String(fixture, StandardCharsets.UTF_8), cache.load(DATE));
+        assertEquals(2, requests.get());
+    }
+
+    public void testMissingMapOnServerFails() {
+        try {
+            cache(MapCache.DEFAULT_MAX_BYTES, false).load(new String[]{"18", "09", "2019"});
+            fail("404 must be reported");
+        } catch (IOException e) {
+            assertFalse(Files.exists(directory.resolve("2019-09-18.geojson")));
+        }
+    }
+
+    public void testEvictsLeastRecentlyUsed() throws IOException {
+        byte[] small = "{}".getBytes(StandardCharsets.UTF_8);
+        //room for the fixture, its digest and only one of the two small maps
+        MapCache cache = cache(fixture.length + 64 + 100, false);
+        cache.store("2019-01-01", small);
+        cache.store("2019-01-02", small);
+        Files.setLastModifiedTime(directory.resolve("2019-01-01.geojson"), FileTime.fromMillis(1000));
+        Files.setLastModifiedTime(directory.resolve("2019-01-02.geojson"), FileTime.fromMillis(2000));
+        cache.load(DATE);
+        assertFalse(Files.exists(directory.resolve("2019-01-01.geojson")));
+        assertFalse(Files.exists(directory.resolve("2019-01-01.sha256")));
+        assertTrue(Files.exists(directory.resolve("2019-01-02.geojson")));
+        assertTrue(Files.exists(directory.resolve("2019-09-17.geojson")));
+    }
+
+    public void testCompiledMapCountsTowardsTheCap() throws IOException {
+        byte[] small = "{}".getBytes(StandardCharsets.UTF_8);
+        //room for the fixture, its digest and the small map, but not for the compiled map too
+        MapCache cache = cache(fixture.length + 64 + 100, false);
+        cache.store("2019-01-01", small);
+        Files.setLastModifiedTime(directory.resolve("2019-01-01.geojson"), FileTime.fromMillis(1000));
+        cache.load(DATE);
+        assertTrue(Files.exists(directory.resolve("2019-01-01.geojson")));
+        cache.fetchCompiled(DATE);
+        assertFalse(Files.exists(directory.resolve("2019-01-01.geojson")));
+        assertTrue(Files.exists(directory.resolve("2019-09-17.pgmap")));
+    }
+}
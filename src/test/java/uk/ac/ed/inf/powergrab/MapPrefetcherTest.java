@@ -0,0 +1,120 @@
+package uk.ac.ed.inf.powergrab;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+
+import java.io.FileNotFoundException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests of MapPrefetcher against a local stand-in for the map server,
+ * which serves the fixture map for every day of September 2019.
+ */
+public class MapPrefetcherTest extends TestCase {
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private Path directory;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger concurrent = new AtomicInteger();
+    private final AtomicInteger maxConcurrent = new AtomicInteger();
+    private final ConcurrentHashMap<String, AtomicInteger> failuresLeft = new ConcurrentHashMap<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        byte[] fixture = TestMaps.readFixture("2019-09-17");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            requests.incrementAndGet();
+            maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(30);
+                String path = exchange.getRequestURI().getPath();
+                AtomicInteger failures = failuresLeft.get(path);
+                int status = !path.startsWith("/2019/09/") ? 404
+                        : (failures != null && failures.getAndDecrement() > 0 ? 503 : 200);
+                exchange.sendResponseHeaders(status, status == 200 ? fixture.length : -1);
+                try(OutputStream out = exchange.getResponseBody()) {
+                    if(status == 200) out.write(fixture);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        directory = Files.createTempDirectory("powergrab-prefetch");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        TestMaps.deleteRecursively(directory);
+    }
+
+    private MapPrefetcher prefetcher(int maxInFlight, int maxAttempts) {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort();
+        return new MapPrefetcher(new MapCache(directory, MapCache.DEFAULT_MAX_BYTES, url, false), maxInFlight, maxAttempts, 5);
+    }
+
+    public void testFetchesRangeWithBoundedConcurrency() {
+        try(MapPrefetcher prefetcher = prefetcher(3, 1)) {
+            MapPrefetcher.Report report = prefetcher.prefetch(LocalDate.of(2019, 9, 1), LocalDate.of(2019, 9, 12));
+            assertEquals(12, report.cached.size());
+            assertTrue(report.failed.isEmpty());
+            assertTrue(Files.exists(directory.resolve("2019-09-12.geojson")));
+        }
+        assertEquals(12, requests.get());
+        assertTrue(maxConcurrent.get() <= 3);
+        assertTrue(maxConcurrent.get() > 1);
+    }
+
+    public void testRetriesWithBackoff() {
+        failuresLeft.put("/2019/09/05/powergrabmap.geojson", new AtomicInteger(2));
+        try(MapPrefetcher prefetcher = prefetcher(2, 3)) {
+            MapPrefetcher.Report report = prefetcher.prefetch(LocalDate.of(2019, 9, 5), LocalDate.of(2019, 9, 5));
+            assertEquals(1, report.cached.size());
+        }
+        assertEquals(3, requests.get());
+    }
+
+    public void testGivesUpAfterMaxAttempts() {
+        failuresLeft.put("/2019/09/05/powergrabmap.geojson", new AtomicInteger(5));
+        try(MapPrefetcher prefetcher = prefetcher(2, 2)) {
+            MapPrefetcher.Report report = prefetcher.prefetch(LocalDate.of(2019, 9, 4), LocalDate.of(2019, 9, 5));
+            assertEquals(1, report.cached.size());
+            assertTrue(report.failed.containsKey("2019-09-05"));
+        }
+        assertEquals(3, requests.get());
+    }
+
+    public void testMissingMapIsNotRetried() {
+        try(MapPrefetcher prefetcher = prefetcher(2, 4)) {
+            MapPrefetcher.Report report = prefetcher.prefetch(LocalDate.of(2019, 10, 1), LocalDate.of(2019, 10, 1));
+            assertTrue(report.failed.get("2019-10-01") instanceof FileNotFoundException);
+        }
+        assertEquals(1, requests.get());
+    }
+
+    public void testSameDateIsFetchedOnce() {
+        try(MapPrefetcher prefetcher = prefetcher(4, 1)) {
+            CompletableFuture<Path> first = prefetcher.prefetch(new String[]{"17", "09", "2019"});
+            CompletableFuture<Path> second = prefetcher.prefetch(new String[]{"17", "9", "2019"});
+            assertSame(first, second);
+            assertEquals(first.join(), second.join());
+        }
+        assertEquals(1, requests.get());
+    }
+}
@@ -0,0 +1,159 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class OrienteeringPlannerTest extends TestCase {
+    private static final double START_LATITUDE = 55.9436;
+    private static final double START_LONGITUDE = -3.1920;
+
+    private static int[] allStations(GameStateMap map) {
+        int[] tour = new int[map.stations.size];
+        for(int i = 0; i < tour.length; i++) {
+            tour[i] = i;
+        }
+        return tour;
+    }
+
+    /**
+     * @return moves of the tour, counted as the planner counts them
+     */
+    private static int moves(GameStateMap map, int[] tour, int length) {
+        StationMatrix matrix = StationMatrix.of(map.stations);
+        int total = 0;
+        for(int k = 0; k < length; k++) {
+            int station = tour[k];
+            total += k == 0
+                    ? StationMatrix.moves(map.stations.latitude[station] - START_LATITUDE, map.stations.longitude[station] - START_LONGITUDE)
+                    : matrix.moves(matrix.node(tour[k - 1]), matrix.node(station));
+        }
+        return total;
+    }
+
+    /**
+     * @return most coins within the limit, over the fewest moves to visit every set of stations
+     */
+    private static double bestCoins(GameStateMap map, int limit) {
+        int n = map.stations.size;
+        StationMatrix matrix = StationMatrix.of(map.stations);
+        int[][] fewest = new int[1 << n][n];
+        for(int[] row : fewest) {
+            Arrays.fill(row, Integer.MAX_VALUE);
+        }
+        for(int i = 0; i < n; i++) {
+            fewest[1 << i][i] = moves(map, new int[]{i}, 1);
+        }
+        double best = 0;
+        for(int set = 1; set < 1 << n; set++) {
+            for(int last = 0; last < n; last++) {
+                if(fewest[set][last] > limit) {
+                    continue;
+                }
+                double coins = 0;
+                for(int i = 0; i < n; i++) {
+                    coins += (set >> i & 1) == 1 ? map.stations.coins[i] : 0;
+                }
+                best = Math.max(best, coins);
+                for(int i = 0; i < n; i++) {
+                    if((set >> i & 1) == 0) {
+                        int moves = fewest[set][last] + matrix.moves(matrix.node(last), matrix.node(i));
+                        fewest[set | 1 << i][i] = Math.min(fewest[set | 1 << i][i], moves);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    public void testFindsTheBestTourWithinTheLimit() {
+        GameStateMap map = TestMaps.randomMap(12, 12, false, 100);
+        for(int limit : new int[]{20, 40, 60}) {
+            OrienteeringPlanner planner = new OrienteeringPlanner(60_000_000_000L, limit, ForkJoinPool.commonPool());
+            int[] planned = planner.plan(map, START_LATITUDE, START_LONGITUDE, allStations(map));
+            assertFalse(planner.timedOut);
+            assertEquals(0.0, planner.gap);
+            assertEquals(bestCoins(map, limit), planner.plannedCoins, 1e-9);
+            assertTrue(planner.plannedCoins >= planner.initialCoins);
+            assertTrue(planner.nodes > 0);
+
+            //the planned stations come first, and every station is in the plan once
+            double coins = 0;
+            int length = 0;
+            while(coins < planner.plannedCoins - 1e-9) {
+                coins += map.stations.coins[planned[length++]];
+            }
+            assertEquals(planner.plannedMoves, moves(map, planned, length));
+            assertTrue(planner.plannedMoves <= limit);
+            int[] sorted = planned.clone();
+            Arrays.sort(sorted);
+            assertTrue(Arrays.equals(allStations(map), sorted));
+        }
+    }
+
+    public void testCheapClusterDoesNotHideRichLighthouse() {
+        //lighthouses in range of each other cost no moves between them, so they have
+        //to come first in the bound, before the far lighthouse with more coins
+        for(int seed : new int[]{216, 219, 231, 238, 275}) {
+            Random random = new Random(seed);
+            StationTable.Builder builder = new StationTable.Builder();
+            double clusterLatitude = START_LATITUDE + 0.0009;
+            for(int i = 0; i < 10; i++) {
+                builder.add("near" + i, clusterLatitude + (random.nextDouble() - 0.5) * 0.0006,
+                        START_LONGITUDE + 0.0009 + (random.nextDouble() - 0.5) * 0.0006,
+                        1 + random.nextDouble() * 20, 10, StationTable.LIGHTHOUSE, "#00ff00");
+            }
+            builder.add("far", START_LATITUDE, START_LONGITUDE + 0.0003 * (4 + random.nextInt(8)),
+                    40 + random.nextDouble() * 40, 10, StationTable.LIGHTHOUSE, "#00ff00");
+            GameStateMap map = new GameStateMap(builder.build(), null);
+            for(int limit = 5; limit <= 20; limit++) {
+                OrienteeringPlanner planner = new OrienteeringPlanner(60_000_000_000L, limit, ForkJoinPool.commonPool());
+                planner.plan(map, START_LATITUDE, START_LONGITUDE, allStations(map));
+                assertEquals("seed " + seed + ", limit " + limit, bestCoins(map, limit), planner.plannedCoins, 1e-9);
+                assertEquals(0.0, planner.gap);
+            }
+        }
+    }
+
+    public void testPlanDoesNotDependOnThreads() {
+        //lighthouses with the same coins at the same moves east and west of the start tie
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int k = 1; k <= 6; k++) {
+            builder.add("east" + k, START_LATITUDE, START_LONGITUDE + 0.0003 * 3 * k, 10, 10, StationTable.LIGHTHOUSE, "#00ff00");
+            builder.add("west" + k, START_LATITUDE, START_LONGITUDE - 0.0003 * 3 * k, 10, 10, StationTable.LIGHTHOUSE, "#00ff00");
+        }
+        GameStateMap[] maps = {new GameStateMap(builder.build(), null),
+                TestMaps.randomMap(20, 1, false, 100), TestMaps.randomMap(20, 2, false, 100)};
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            for(GameStateMap map : maps) {
+                for(int limit : new int[]{10, 20, 30}) {
+                    OrienteeringPlanner sequential = new OrienteeringPlanner(60_000_000_000L, limit, one);
+                    OrienteeringPlanner parallel = new OrienteeringPlanner(60_000_000_000L, limit, four);
+                    int[] planned = sequential.plan(map, START_LATITUDE, START_LONGITUDE, allStations(map));
+                    assertTrue(Arrays.equals(planned, parallel.plan(map, START_LATITUDE, START_LONGITUDE, allStations(map))));
+                    assertFalse(parallel.timedOut);
+                    assertEquals(sequential.plannedMoves, parallel.plannedMoves);
+                    assertEquals(Double.doubleToLongBits(sequential.plannedCoins), Double.doubleToLongBits(parallel.plannedCoins));
+                }
+            }
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    public void testReportsGapWhenBudgetRunsOut() {
+        GameStateMap map = TestMaps.randomMap(400, 400, false, 100);
+        OrienteeringPlanner planner = new OrienteeringPlanner(50_000_000L, TourPlanner.MOVE_LIMIT, ForkJoinPool.commonPool());
+        int[] planned = planner.plan(map, START_LATITUDE, START_LONGITUDE, allStations(map));
+        assertTrue(planner.timedOut);
+        assertTrue(planner.gap > 0 && planner.gap < 1);
+        assertTrue(planner.upperBound >= planner.plannedCoins);
+        assertTrue(planner.plannedCoins >= planner.initialCoins);
+        assertEquals(map.stations.size, planned.length);
+    }
+}
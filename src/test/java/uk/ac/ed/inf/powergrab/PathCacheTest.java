@@ -0,0 +1,122 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PathCacheTest extends TestCase {
+    private static final Position START = new Position(55.944425, -3.188396);
+
+    private Path directory;
+    private StationTable stations;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("powergrab-paths");
+        stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestMaps.deleteRecursively(directory);
+    }
+
+    public void testPathsAreReadBackFromFile() throws IOException {
+        Path file = directory.resolve("2019-09-17.pgpaths");
+        PathCache cache = new PathCache(file, stations);
+        Direction[] odd = {Direction.N, Direction.SSW, Direction.E};
+        Direction[] even = {Direction.NNW, Direction.NNW};
+        cache.put(3, 7, odd);
+        cache.put(7, 3, even);
+        cache.put(1, 2, new Direction[0]);
+        cache.put(3, 7, even);
+        cache.save();
+
+        PathCache read = new PathCache(file, stations);
+        assertEquals(3, read.size());
+        assertTrue(Arrays.equals(odd, read.get(3, 7)));
+        assertTrue(Arrays.equals(even, read.get(7, 3)));
+        assertEquals(0, read.get(1, 2).length);
+        assertNull(read.get(2, 1));
+    }
+
+    public void testFileOfOtherStationsIsIgnored() throws IOException {
+        Path file = directory.resolve("2019-09-17.pgpaths");
+        PathCache cache = new PathCache(file, stations);
+        cache.put(3, 7, new Direction[]{Direction.N});
+        cache.save();
+
+        StationTable.Builder builder = new StationTable.Builder();
+        builder.add("moved", 55.9440, -3.1900, 10, 10, StationTable.LIGHTHOUSE, "#00ff00");
+        assertEquals(0, new PathCache(file, builder.build()).size());
+    }
+
+    public void testSaveKeepsPathsOfOtherRuns() throws IOException {
+        Path file = directory.resolve("2019-09-17.pgpaths");
+        PathCache first = new PathCache(file, stations);
+        PathCache second = new PathCache(file, stations);
+        first.put(1, 2, new Direction[]{Direction.N});
+        second.put(2, 1, new Direction[]{Direction.S});
+        first.save();
+        second.save();
+
+        PathCache read = new PathCache(file, stations);
+        assertEquals(2, read.size());
+        assertEquals(Direction.N, read.get(1, 2)[0]);
+        assertEquals(Direction.S, read.get(2, 1)[0]);
+    }
+
+    public void testCacheIsInTheDirectoryOfTheMapCache() {
+        System.setProperty("powergrab.pathcache", "true");
+        try {
+            MapCache mapCache = new MapCache(directory, MapCache.DEFAULT_MAX_BYTES, "http://127.0.0.1:1", true);
+            PathCache cache = PathCache.fromSystemProperties(mapCache, MapCacheTest.DATE, stations);
+            assertEquals(directory.resolve("2019-09-17.pgpaths"), cache.file);
+            assertSame(cache, PathCache.fromSystemProperties(mapCache, MapCacheTest.DATE, stations));
+        } finally {
+            System.clearProperty("powergrab.pathcache");
+        }
+    }
+
+    public void testCacheDoesNotKeepTheMapAlive() throws InterruptedException {
+        PathCache.of(directory.resolve("2019-09-17.pgpaths"), stations);
+        WeakReference<StationTable> table = new WeakReference<>(stations);
+        stations = null;
+        for(int k = 0; k < 50 && table.get() != null; k++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(table.get());
+    }
+
+    public void testLaterGamesReplayPaths() throws IOException {
+        System.setProperty("powergrab.pathplanner.maxPoints", "20000");
+        try {
+            PathCache cache = new PathCache(directory.resolve("2019-09-17.pgpaths"), stations);
+            GameStateMap loaded = new GameStateMap(stations, null);
+            double[] coins = new double[2];
+            for(int game = 0; game < 2; game++) {
+                StatefulDrone drone = new StatefulDrone(START, new GameStateMap(loaded, new Random(5678)),
+                        new PrintWriter(new StringWriter()), null);
+                drone.pathCache = cache;
+                while(!drone.isFinished()) {
+                    drone.move();
+                }
+                coins[game] = drone.coins;
+            }
+            assertTrue(cache.size() > 0);
+            assertEquals(cache.size(), cache.hits.get());
+            assertEquals(coins[0], coins[1], 1e-9);
+        } finally {
+            System.clearProperty("powergrab.pathplanner.maxPoints");
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+public class PathPlannerTest extends TestCase {
+    private static final double START_LATITUDE = 55.9440;
+    private static final double START_LONGITUDE = -3.1900;
+    private static final double TARGET_LONGITUDE = START_LONGITUDE + 0.0030;
+
+    private static StationTable.Builder target() {
+        StationTable.Builder builder = new StationTable.Builder();
+        builder.add("target", START_LATITUDE, TARGET_LONGITUDE, 10, 10, StationTable.LIGHTHOUSE, "#00ff00");
+        return builder;
+    }
+
+    private static void addRed(StationTable.Builder builder, String id, double lat, double lon) {
+        builder.add(id, lat, lon, -10, -10, StationTable.DANGER, "#ff0000");
+    }
+
+    /**
+     * @return Lattice point after following a path, checking that every point on the way is safe
+     */
+    private static long follow(GameStateMap map, Lattice lattice, Direction[] path) {
+        long point = Lattice.ORIGIN;
+        for(Direction d : path) {
+            point = Lattice.next(point, d);
+            assertTrue(lattice.inPlayArea(point));
+            double lat = lattice.latitude(point);
+            double lon = lattice.longitude(point);
+            int[] nearby = new int[map.stations.size];
+            int inRange = map.grid.stationsWithin(lat, lon, GameStateMap.CHARGING_RANGE, nearby);
+            int closest = -1;
+            for(int k = 0; k < inRange; k++) {
+                if(closest == -1 || map.stations.distance(nearby[k], lat, lon) < map.stations.distance(closest, lat, lon)) {
+                    closest = nearby[k];
+                }
+            }
+            assertTrue(closest == -1 || map.stations.kind[closest] != StationTable.DANGER);
+        }
+        return point;
+    }
+
+    public void testStraightPathWithoutDangerStations() {
+        GameStateMap map = new GameStateMap(target().build(), null);
+        Lattice lattice = new Lattice(new Position(START_LATITUDE, START_LONGITUDE));
+        PathPlanner planner = new PathPlanner(10_000);
+        Direction[] path = planner.plan(map, lattice, Lattice.ORIGIN, START_LATITUDE, TARGET_LONGITUDE);
+        assertNotNull(path);
+        assertEquals(StationMatrix.moves(0, TARGET_LONGITUDE - START_LONGITUDE), path.length);
+        long end = follow(map, lattice, path);
+        assertTrue(map.stations.distance(0, lattice.latitude(end), lattice.longitude(end)) <= GameStateMap.CHARGING_RANGE);
+
+        assertEquals(0, planner.plan(map, lattice, end, START_LATITUDE, TARGET_LONGITUDE).length);
+    }
+
+    public void testPathAroundWallOfDangerStations() {
+        StationTable.Builder builder = target();
+        for(int k = -4; k <= 4; k++) {
+            addRed(builder, "r" + k, START_LATITUDE + 0.0002 * k, START_LONGITUDE + 0.0015);
+        }
+        GameStateMap map = new GameStateMap(builder.build(), null);
+        Lattice lattice = new Lattice(new Position(START_LATITUDE, START_LONGITUDE));
+        PathPlanner planner = new PathPlanner(10_000);
+        Direction[] path = planner.plan(map, lattice, Lattice.ORIGIN, START_LATITUDE, TARGET_LONGITUDE);
+        assertNotNull(path);
+        assertTrue(path.length > StationMatrix.moves(0, TARGET_LONGITUDE - START_LONGITUDE));
+        long end = follow(map, lattice, path);
+        assertTrue(map.stations.distance(0, lattice.latitude(end), lattice.longitude(end)) <= GameStateMap.CHARGING_RANGE);
+    }
+
+    public void testEnclosedTargetIsNotReached() {
+        StationTable.Builder builder = target();
+        for(int k = 0; k < 24; k++) {
+            double angle = 2 * Math.PI * k / 24;
+            addRed(builder, "r" + k, START_LATITUDE + 0.0006 * Math.sin(angle), TARGET_LONGITUDE + 0.0006 * Math.cos(angle));
+        }
+        GameStateMap map = new GameStateMap(builder.build(), null);
+        Lattice lattice = new Lattice(new Position(START_LATITUDE, START_LONGITUDE));
+
+        PathPlanner planner = new PathPlanner(20_000);
+        assertNull(planner.plan(map, lattice, Lattice.ORIGIN, START_LATITUDE, TARGET_LONGITUDE));
+        assertTrue(planner.exhausted);
+
+        Lattice inside = new Lattice(new Position(START_LATITUDE, TARGET_LONGITUDE + 0.0001));
+        assertEquals(0, planner.plan(map, inside, Lattice.ORIGIN, START_LATITUDE, TARGET_LONGITUDE).length);
+        assertFalse(planner.exhausted);
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class PgMapFileTest extends TestCase {
+    private Path directory;
+    private StationTable stations;
+    private String digest;
+
+    @Override
+    protected void setUp() throws Exception {
+        byte[] fixture = TestMaps.readFixture("2019-09-17");
+        stations = GeoJsonMapReader.read(new ByteArrayInputStream(fixture));
+        digest = MapCache.sha256(fixture);
+        directory = Files.createTempDirectory("powergrab-pgmap");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestMaps.deleteRecursively(directory);
+    }
+
+    public void testRoundTrip() throws IOException {
+        Path file = directory.resolve("map.pgmap");
+        PgMapFile.write(stations, digest, file);
+        StationTable loaded = PgMapFile.read(file);
+        assertEquals(stations.size, loaded.size);
+        assertTrue(Arrays.equals(stations.id, loaded.id));
+        assertTrue(Arrays.equals(stations.latitude, loaded.latitude));
+        assertTrue(Arrays.equals(stations.longitude, loaded.longitude));
+        assertTrue(Arrays.equals(stations.coins, loaded.coins));
+        assertTrue(Arrays.equals(stations.power, loaded.power));
+        assertTrue(Arrays.equals(stations.kind, loaded.kind));
+        assertTrue(Arrays.equals(stations.color, loaded.color));
+        assertTrue(PgMapFile.isCompiledFrom(file, digest));
+        assertFalse(PgMapFile.isCompiledFrom(file, MapCache.sha256(new byte[0])));
+    }
+
+    public void testTruncatedFileIsRejected() throws IOException {
+        Path file = directory.resolve("map.pgmap");
+        PgMapFile.write(stations, digest, file);
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 1));
+        assertFalse(PgMapFile.isCompiledFrom(file, digest));
+        try {
+            PgMapFile.read(file);
+            fail("a truncated file must not be loaded");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testStringOutsideOfTheStringTableIsRejected() throws IOException {
+        Path file = directory.resolve("map.pgmap");
+        PgMapFile.write(stations, digest, file);
+        byte[] content = Files.readAllBytes(file);
+        int lastRecord = PgMapFile.HEADER_SIZE + (stations.size - 1) * PgMapFile.RECORD_SIZE;
+        for(int field : new int[]{36, 40, 44, 48}) {
+            for(int value : new int[]{-2, content.length, Integer.MAX_VALUE}) {
+                byte[] corrupt = content.clone();
+                ByteBuffer.wrap(corrupt).putInt(lastRecord + field, value);
+                Files.write(file, corrupt);
+                try {
+                    PgMapFile.read(file);
+                    fail("a string outside of the string table must not be loaded");
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        }
+    }
+}
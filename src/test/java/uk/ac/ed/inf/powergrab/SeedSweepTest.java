@@ -0,0 +1,49 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+public class SeedSweepTest extends TestCase {
+    private static final Position START = new Position(55.944425, -3.188396);
+
+    private static SeedSweep.Result sweep(int threads) throws IOException {
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        try(SeedSweep sweep = new SeedSweep(new GameStateMap(stations, null), START, threads)) {
+            return sweep.run(100, 40);
+        }
+    }
+
+    public void testResultDoesNotDependOnThreads() throws IOException {
+        SeedSweep.Result one = sweep(1);
+        SeedSweep.Result four = sweep(4);
+        assertEquals(Double.doubleToLongBits(one.coins.mean), Double.doubleToLongBits(four.coins.mean));
+        assertEquals(Double.doubleToLongBits(one.power.mean), Double.doubleToLongBits(four.power.mean));
+        for(double p : new double[]{5, 25, 50, 75, 95, 100}) {
+            assertEquals(Double.doubleToLongBits(one.coins.percentile(p)), Double.doubleToLongBits(four.coins.percentile(p)));
+            assertEquals(Double.doubleToLongBits(one.power.percentile(p)), Double.doubleToLongBits(four.power.percentile(p)));
+        }
+        assertEquals(one.bestSeed, four.bestSeed);
+    }
+
+    public void testBestSeedHasMostCoins() throws IOException {
+        SeedSweep.Result result = sweep(2);
+        assertEquals(40, result.count());
+        assertTrue(result.bestSeed >= 100 && result.bestSeed < 140);
+        try(SeedSweep single = new SeedSweep(new GameStateMap(
+                GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17"))), null), START, 1)) {
+            assertEquals(result.coins.max(), single.run(result.bestSeed, 1).coins.mean);
+        }
+    }
+
+    public void testPercentilesUseNearestRank() {
+        SeedSweep.Distribution distribution = new SeedSweep.Distribution(new double[]{40, 10, 30, 20});
+        assertEquals(25.0, distribution.mean);
+        assertEquals(10.0, distribution.percentile(25));
+        assertEquals(20.0, distribution.percentile(50));
+        assertEquals(30.0, distribution.percentile(51));
+        assertEquals(40.0, distribution.percentile(100));
+        assertEquals(10.0, distribution.min());
+    }
+}
@@ -0,0 +1,85 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+public class StatefulDroneTest extends TestCase {
+    private static final Position START = new Position(55.944425, -3.188396);
+
+    public void testEveryMoveIsOneStepOnDenseMaps() {
+        for(int count : new int[]{50, 500, 2000}) {
+            StringWriter txt = new StringWriter();
+            StatefulDrone drone = new StatefulDrone(START, TestMaps.randomMap(count, count, true, 125), new PrintWriter(txt), null);
+            int moves = 0;
+            while(!drone.isFinished()) {
+                Position before = drone.position;
+                drone.move();
+                moves++;
+                assertEquals(moves, drone.movesCount);
+                assertEquals(0.0003, Math.hypot(drone.position.latitude - before.latitude,
+                        drone.position.longitude - before.longitude), 1e-9);
+            }
+            assertTrue(drone.movesCount == 250 || drone.power < 1.25);
+            assertEquals(drone.movesCount, drone.previousPositions.size());
+            assertEquals(drone.movesCount, txt.toString().split("\n").length);
+        }
+    }
+
+    public void testPlanNeverHasEmptiedStations() {
+        GameStateMap map = TestMaps.randomMap(500, 3, true, 125);
+        StatefulDrone drone = new StatefulDrone(START, map, new PrintWriter(new StringWriter()), null);
+        while(!drone.isFinished()) {
+            drone.move();
+            for(int station : drone.planToFollow.toArray()) {
+                assertTrue(map.coins(station) > 0);
+            }
+        }
+        assertTrue(drone.planToFollow.removed > 0);
+    }
+
+    public void testSideSteppingInACircleGivesUpTheTarget() {
+        //the drone used to side-step around the same red stations from move 47 to the end, with 501 coins
+        StatefulDrone drone = new StatefulDrone(START, TestMaps.randomMap(200, 9, true, 125), new PrintWriter(new StringWriter()), null);
+        int target = -1;
+        int movesToTarget = 0;
+        while(!drone.isFinished()) {
+            drone.move();
+            movesToTarget = drone.planToFollow.peek() == target ? movesToTarget + 1 : 0;
+            target = drone.planToFollow.peek();
+            assertTrue(target == -1 || movesToTarget < 4 * StatefulDrone.GIVE_UP_MOVES);
+        }
+        assertTrue(drone.givenUp > 0);
+        assertTrue(drone.coins > 1000);
+    }
+
+    public void testOrienteeringPlanIsReportedToTheLog() throws Exception {
+        System.setProperty("powergrab.orienteering.budgetMillis", "50");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new StatefulDrone(START, TestMaps.randomMap(50, 1, true, 125), new PrintWriter(new StringWriter()),
+                    new PrintStream(out, true, "UTF-8"));
+            String log = out.toString("UTF-8");
+            assertTrue(log.startsWith("Orienteering plan: "));
+            assertTrue(log.contains(" gap "));
+            assertTrue(log.contains(" nodes"));
+        } finally {
+            System.clearProperty("powergrab.orienteering.budgetMillis");
+        }
+    }
+
+    public void testMoveAfterFinishingDoesNothing() {
+        StatefulDrone drone = new StatefulDrone(START, TestMaps.randomMap(50, 1, true, 125), new PrintWriter(new StringWriter()), null);
+        while(!drone.isFinished()) {
+            drone.move();
+        }
+        Position end = drone.position;
+        int moves = drone.movesCount;
+        drone.move();
+        assertSame(end, drone.position);
+        assertEquals(moves, drone.movesCount);
+    }
+}
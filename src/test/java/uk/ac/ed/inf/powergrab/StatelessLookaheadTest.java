@@ -0,0 +1,90 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class StatelessLookaheadTest extends TestCase {
+    private static final Position START = new Position(55.944425, -3.188396);
+    private static final long BUDGET = 60_000_000_000L;
+
+    public void testFindsLighthouseBeyondOneMove() {
+        Lattice lattice = new Lattice(START);
+        long target = Lattice.next(Lattice.next(Lattice.next(Lattice.ORIGIN, Direction.E), Direction.E), Direction.E);
+        StationTable.Builder builder = new StationTable.Builder();
+        builder.add("far", lattice.latitude(target), lattice.longitude(target), 100, 100, StationTable.LIGHTHOUSE, "#00ff00");
+        GameStateMap map = new GameStateMap(builder.build(), null);
+
+        StatelessLookahead.Decision decision = new StatelessLookahead(3, BUDGET, ForkJoinPool.commonPool())
+                .search(map, lattice, Lattice.ORIGIN, 250, 250);
+        double lat = lattice.latitude(target);
+        double lon = lattice.longitude(target);
+        long next = Lattice.next(Lattice.ORIGIN, decision.direction);
+        assertTrue(lattice.distanceSquared(next, lat, lon) < lattice.distanceSquared(Lattice.ORIGIN, lat, lon));
+        assertEquals(3, decision.completedDepth);
+        assertEquals(100 * StatelessLookahead.DISCOUNT * StatelessLookahead.DISCOUNT, decision.score, 1e-9);
+        assertFalse(decision.timedOut);
+    }
+
+    public void testDecisionDoesNotDependOnThreads() throws IOException {
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        GameStateMap map = new GameStateMap(stations, null);
+        Lattice lattice = new Lattice(START);
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            long point = Lattice.ORIGIN;
+            for(Direction direction : new Direction[]{Direction.S, Direction.SSW, Direction.W, Direction.NW, Direction.N}) {
+                point = Lattice.next(point, direction);
+                StatelessLookahead.Decision sequential = new StatelessLookahead(4, BUDGET, one).search(map, lattice, point, 250, 250);
+                StatelessLookahead.Decision parallel = new StatelessLookahead(4, BUDGET, four).search(map, lattice, point, 250, 250);
+                assertEquals(sequential.direction, parallel.direction);
+                assertEquals(Double.doubleToLongBits(sequential.score), Double.doubleToLongBits(parallel.score));
+            }
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    public void testSearchStopsWhenBudgetRunsOut() throws IOException {
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        StatelessLookahead.Decision decision = new StatelessLookahead(8, 0, ForkJoinPool.commonPool())
+                .search(new GameStateMap(stations, null), new Lattice(START), Lattice.ORIGIN, 250, 250);
+        assertTrue(decision.timedOut);
+        assertTrue(decision.completedDepth < 8);
+        assertTrue(decision.nodes > 0);
+    }
+
+    public void testGameReportsEverySearchToTheLog() throws IOException {
+        Path directory = Files.createTempDirectory("powergrab-lookahead");
+        System.setProperty("powergrab.lookahead.depth", "2");
+        try {
+            MapCache cache = new MapCache(directory, MapCache.DEFAULT_MAX_BYTES, "http://127.0.0.1:1", true);
+            GameStateMap map = new GameStateMap(GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17"))), null);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            String[] args = "17 09 2019 55.944425 -3.188396 5678 stateless".split(" ");
+            try(Game game = new Game(args, directory, cache, map, new PrintStream(out, true, "UTF-8"))) {
+                game.play();
+            }
+            List<String> moves = Files.readAllLines(directory.resolve("stateless-17-09-2019.txt"), StandardCharsets.UTF_8);
+            String[] log = out.toString("UTF-8").split("\n");
+            assertEquals(moves.size(), log.length);
+            for(String line : log) {
+                assertTrue(line.startsWith("Lookahead: "));
+                assertTrue(line.contains(" nodes, "));
+            }
+        } finally {
+            System.clearProperty("powergrab.lookahead.depth");
+            TestMaps.deleteRecursively(directory);
+        }
+    }
+}
@@ -2,6 +2,10 @@ package uk.ac.ed.inf.powergrab;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
 public class StatelessMapControllerTest extends TestCase {
 
     public void testGetDirection() {
@@ -15,4 +19,27 @@ public class StatelessMapControllerTest extends TestCase {
 
     public void testAddPath() {
     }
-}
\ No newline at end of file
+
+    public void testDirectionToMoveDoesNotAllocate() throws Exception {
+        if(!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if(!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        StatelessMapController controller = new StatelessMapController(new GameStateMap(stations, new Random(5678)),
+                new Position(55.944425, -3.188396));
+        for(int i = 0; i < 1000; i++) {
+            controller.getDirectionToMove();
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for(int i = 0; i < 10000; i++) {
+            controller.getDirectionToMove();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue("10000 moves allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,102 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class StationGridTest extends TestCase {
+    //how far outside of the play area stations and query points may be
+    private static final double OUTSIDE = 0.001;
+
+    private static double latitude(Random random) {
+        return Position.MIN_LATITUDE - OUTSIDE + random.nextDouble() * (Position.MAX_LATITUDE - Position.MIN_LATITUDE + 2 * OUTSIDE);
+    }
+
+    private static double longitude(Random random) {
+        return Position.MIN_LONGITUDE - OUTSIDE + random.nextDouble() * (Position.MAX_LONGITUDE - Position.MIN_LONGITUDE + 2 * OUTSIDE);
+    }
+
+    /**
+     * @return table of stations of both kinds, some of them outside of the play area
+     */
+    private static StationTable randomTable(int count, long seed) {
+        Random random = new Random(seed);
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int i = 0; i < count; i++) {
+            boolean lighthouse = random.nextBoolean();
+            builder.add("s" + i, latitude(random), longitude(random), lighthouse ? 10 : -10, lighthouse ? 10 : -10,
+                    lighthouse ? StationTable.LIGHTHOUSE : StationTable.DANGER, lighthouse ? "#00ff00" : "#ff0000");
+        }
+        return builder.build();
+    }
+
+    private static int nearestByScan(StationTable stations, double lat, double lon, byte kind, boolean[] excluded) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < stations.size; i++) {
+            if(stations.kind[i] != kind || (excluded != null && excluded[i])) {
+                continue;
+            }
+            double distance = stations.distance(i, lat, lon);
+            if(distance < bestDistance) {
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    public void testStationsWithinSameAsScan() {
+        for(int count : new int[]{0, 1, 50, 1000}) {
+            StationTable stations = randomTable(count, count);
+            StationGrid grid = new StationGrid(stations, GameStateMap.CHARGING_RANGE);
+            int[] found = new int[stations.size];
+            Random random = new Random(1);
+            for(int k = 0; k < 2000; k++) {
+                double lat = latitude(random);
+                double lon = longitude(random);
+                double radius = random.nextDouble() * 4 * GameStateMap.CHARGING_RANGE;
+                int within = grid.stationsWithin(lat, lon, radius, found);
+                int expected = 0;
+                for(int i = 0; i < stations.size; i++) {
+                    if(stations.distance(i, lat, lon) <= radius) {
+                        assertTrue(expected < within);
+                        assertEquals(i, found[expected++]);
+                    }
+                }
+                assertEquals(expected, within);
+            }
+        }
+    }
+
+    public void testNearestSameAsScan() {
+        for(int count : new int[]{0, 1, 50, 1000}) {
+            StationTable stations = randomTable(count, count + 1);
+            StationGrid grid = new StationGrid(stations, GameStateMap.CHARGING_RANGE);
+            Random random = new Random(2);
+            boolean[] excluded = new boolean[stations.size];
+            for(int k = 0; k < 2000; k++) {
+                double lat = latitude(random);
+                double lon = longitude(random);
+                //every fourth query has no mask, the others exclude one more station each
+                boolean[] mask = k % 4 == 0 ? null : excluded;
+                if(mask != null && stations.size > 0) {
+                    excluded[random.nextInt(stations.size)] = true;
+                }
+                for(byte kind : new byte[]{StationTable.LIGHTHOUSE, StationTable.DANGER}) {
+                    assertEquals(nearestByScan(stations, lat, lon, kind, mask), grid.nearest(lat, lon, kind, mask));
+                }
+            }
+        }
+    }
+
+    public void testNearestWhenEverythingIsExcluded() {
+        StationTable stations = randomTable(50, 3);
+        StationGrid grid = new StationGrid(stations, GameStateMap.CHARGING_RANGE);
+        boolean[] excluded = new boolean[stations.size];
+        Arrays.fill(excluded, true);
+        assertEquals(-1, grid.nearest(55.944, -3.188, StationTable.LIGHTHOUSE, excluded));
+        assertEquals(-1, grid.nearest(Position.MAX_LATITUDE + OUTSIDE, -3.188, StationTable.DANGER, excluded));
+    }
+}
@@ -0,0 +1,110 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class StationMatrixTest extends TestCase {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Whether some k moves in any directions end within the charging range of a target.
+     */
+    private static boolean reachable(double dLat, double dLon, int k, int fromDirection) {
+        double range = GameStateMap.CHARGING_RANGE;
+        if(dLat * dLat + dLon * dLon <= range * range) {
+            return true;
+        }
+        if(k == 0) {
+            return false;
+        }
+        for(int d = fromDirection; d < DIRECTIONS.length; d++) {
+            if(reachable(dLat - DIRECTIONS[d].changeOfLatitude(), dLon - DIRECTIONS[d].changeOfLongitude(), k - 1, d)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testMovesAreFewestInAnyDirections() {
+        Random random = new Random(19);
+        for(int t = 0; t < 200; t++) {
+            double dLat = (random.nextDouble() - 0.5) * 0.0024;
+            double dLon = (random.nextDouble() - 0.5) * 0.0024;
+            int moves = StationMatrix.moves(dLat, dLon);
+            assertTrue(reachable(dLat, dLon, moves, 0));
+            if(moves > 0) {
+                assertFalse("fewer moves reach " + dLat + ", " + dLon, reachable(dLat, dLon, moves - 1, 0));
+            }
+        }
+    }
+
+    public void testMovesOfStraightLines() {
+        assertEquals(0, StationMatrix.moves(0, 0.0002));
+        assertEquals(1, StationMatrix.moves(0, 0.0005));
+        assertEquals(3, StationMatrix.moves(-0.001, 0));
+    }
+
+    public void testMatrixOfMap() throws IOException {
+        StationTable stations = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        StationMatrix matrix = StationMatrix.of(stations);
+        assertSame(matrix, StationMatrix.of(stations));
+        int lighthouses = 0;
+        for(int i = 0; i < stations.size; i++) {
+            if(stations.isLighthouse(i)) {
+                assertEquals(i, matrix.station(matrix.node(i)));
+                lighthouses++;
+            }
+            else {
+                assertEquals(-1, matrix.node(i));
+            }
+        }
+        assertEquals(lighthouses, matrix.size);
+        for(int a = 0; a < matrix.size; a++) {
+            assertEquals(0, matrix.moves(a, a));
+            for(int b = 0; b < matrix.size; b++) {
+                int from = matrix.station(a);
+                int to = matrix.station(b);
+                assertEquals((float) stations.distance(to, stations.latitude[from], stations.longitude[from]), matrix.distance(a, b));
+                assertEquals(StationMatrix.moves(stations.latitude[to] - stations.latitude[from],
+                        stations.longitude[to] - stations.longitude[from]), matrix.moves(a, b));
+            }
+        }
+    }
+
+    public void testValuesOfLargeMapsAreComputedWhenRead() {
+        StationTable stations = TestMaps.randomMap(60, 60, true, 10).stations;
+        StationMatrix stored = new StationMatrix(stations);
+        StationMatrix computed = new StationMatrix(stations, 10);
+        assertEquals(stored.size, computed.size);
+        for(int a = 0; a < stored.size; a++) {
+            for(int b = 0; b < stored.size; b++) {
+                assertEquals(stored.distance(a, b), computed.distance(a, b));
+                assertEquals(stored.moves(a, b), computed.moves(a, b));
+            }
+        }
+    }
+
+    public void testMatrixIsComputedOnceForThreadsAskingAtOnce() throws Exception {
+        StationTable stations = TestMaps.randomMap(500, 500, false, 10).stations;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<StationMatrix>> matrices = new ArrayList<>();
+            for(int k = 0; k < 8; k++) {
+                matrices.add(executor.submit(() -> StationMatrix.of(stations)));
+            }
+            for(Future<StationMatrix> matrix : matrices) {
+                assertSame(StationMatrix.of(stations), matrix.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+
+public class StationOverlayTest extends TestCase {
+    private StationTable stations;
+
+    @Override
+    protected void setUp() throws Exception {
+        stations = new StationTable.Builder()
+                .add("green", 55.944, -3.188, 40, 60, "lighthouse", "#00ff00")
+                .add("red", 55.945, -3.189, -30, -20, "danger", "#ff0000")
+                .add("other", 55.943, -3.187, -5, -5, "danger", "#ff0000")
+                .build();
+    }
+
+    public void testUntouchedStationsHaveTheirValuesFromTheMap() {
+        StationOverlay overlay = new StationOverlay(stations);
+        for(int i = 0; i < stations.size; i++) {
+            assertEquals(stations.coins[i], overlay.coins(i));
+            assertEquals(stations.power[i], overlay.power(i));
+        }
+    }
+
+    public void testLighthouseIsEmptiedAndDangerIsCharged() {
+        StationOverlay overlay = new StationOverlay(stations);
+        overlay.update(0, 10, 200);
+        assertEquals(0.0, overlay.coins(0));
+        assertEquals(0.0, overlay.power(0));
+
+        overlay.update(1, 10, 200);
+        overlay.update(1, 0.1, 0.2);
+        assertEquals((-30.0 + 10) + 0.1, overlay.coins(1));
+        assertEquals((-20.0 + 200) + 0.2, overlay.power(1));
+        assertEquals(-5.0, overlay.coins(2));
+
+        assertEquals(40.0, stations.coins[0]);
+        assertEquals(-30.0, stations.coins[1]);
+    }
+
+    public void testManyChargedStationsKeepTheirOwnValues() {
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int i = 0; i < 100; i++) {
+            builder.add("red" + i, 55.944, -3.188, -i, -2 * i, "danger", "#ff0000");
+        }
+        StationTable many = builder.build();
+        StationOverlay overlay = new StationOverlay(many);
+        Random random = new Random(1);
+        double[] coins = many.coins.clone();
+        double[] power = many.power.clone();
+        for(int k = 0; k < 500; k++) {
+            int station = random.nextInt(many.size);
+            overlay.update(station, k, 2 * k);
+            coins[station] += k;
+            power[station] += 2 * k;
+        }
+        for(int i = 0; i < many.size; i++) {
+            assertEquals(coins[i], overlay.coins(i));
+            assertEquals(power[i], overlay.power(i));
+        }
+    }
+
+    public void testChangeLogHasEachStationOnce() {
+        StationOverlay overlay = new StationOverlay(stations);
+        assertEquals(0, overlay.changes());
+        overlay.update(1, 10, 200);
+        overlay.update(0, 10, 200);
+        overlay.update(1, 10, 200);
+        overlay.update(0, 10, 200);
+        assertEquals(2, overlay.changes());
+        assertEquals(1, overlay.change(0));
+        assertEquals(0, overlay.change(1));
+    }
+
+    public void testGamesOnTheSameMapDontSeeEachOther() throws Exception {
+        StationTable fixture = GeoJsonMapReader.read(new ByteArrayInputStream(TestMaps.readFixture("2019-09-17")));
+        GameStateMap loaded = new GameStateMap(fixture, null);
+        GameStateMap first = new GameStateMap(loaded, new Random(1));
+        GameStateMap second = new GameStateMap(loaded, new Random(1));
+        assertSame(loaded.stations, first.stations);
+        assertSame(loaded.grid, second.grid);
+
+        double coins = fixture.coins[0];
+        first.updateStation(0, 0, 0);
+        assertEquals(0.0, first.coins(0));
+        assertEquals(coins, second.coins(0));
+        assertEquals(coins, loaded.coins(0));
+        assertEquals(coins, fixture.coins[0]);
+    }
+}
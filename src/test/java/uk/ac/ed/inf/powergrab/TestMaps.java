@@ -0,0 +1,60 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Maps and files shared by the tests.
+ */
+final class TestMaps {
+    private TestMaps() {
+    }
+
+    /**
+     * @return bytes of the GeoJSON fixture of a day, e.g. "2019-09-17"
+     */
+    static byte[] readFixture(String key) throws IOException {
+        try {
+            return Files.readAllBytes(Paths.get(TestMaps.class.getResource("/maps/" + key + ".geojson").toURI()));
+        } catch (java.net.URISyntaxException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static void deleteRecursively(Path path) throws IOException {
+        if(path == null || !Files.exists(path)) return;
+        try(Stream<Path> walk = Files.walk(path)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    /**
+     * <p>
+     *     Creates a map of stations placed at random within the play area.
+     *     Lighthouses have up to <code>maxValue</code> coins and power, and
+     *     dangerous stations as much again taken away.
+     * </p>
+     * @param count number of stations
+     * @param seed seed of the stations and of the random moves of the game
+     * @param withDangers false if every station is a lighthouse, true if each one is dangerous with even odds
+     * @param maxValue most coins and power of a station
+     */
+    static GameStateMap randomMap(int count, long seed, boolean withDangers, double maxValue) {
+        Random random = new Random(seed);
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int i = 0; i < count; i++) {
+            double lat = Position.MIN_LATITUDE + random.nextDouble() * (Position.MAX_LATITUDE - Position.MIN_LATITUDE);
+            double lon = Position.MIN_LONGITUDE + random.nextDouble() * (Position.MAX_LONGITUDE - Position.MIN_LONGITUDE);
+            boolean lighthouse = !withDangers || random.nextBoolean();
+            double sign = lighthouse ? 1 : -1;
+            builder.add("s" + i, lat, lon, sign * random.nextDouble() * maxValue, sign * random.nextDouble() * maxValue,
+                    lighthouse ? StationTable.LIGHTHOUSE : StationTable.DANGER, lighthouse ? "#00ff00" : "#ff0000");
+        }
+        return new GameStateMap(builder.build(), new Random(seed));
+    }
+}
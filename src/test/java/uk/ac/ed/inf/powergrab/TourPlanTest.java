@@ -0,0 +1,73 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class TourPlanTest extends TestCase {
+    private static final double LATITUDE = 55.9436;
+    private static final double LONGITUDE = -3.1920;
+
+    /**
+     * @return map of lighthouses at the given numbers of moves east of the first one
+     */
+    private static GameStateMap lineMap(int... moves) {
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int k = 0; k < moves.length; k++) {
+            builder.add("s" + k, LATITUDE, LONGITUDE + 0.0003 * moves[k], 10, 10, StationTable.LIGHTHOUSE, "#00ff00");
+        }
+        return new GameStateMap(builder.build(), null);
+    }
+
+    private static TourPlan plan(GameStateMap map, int... stations) {
+        TourPlan plan = new TourPlan(map);
+        for(int station : stations) {
+            plan.add(station);
+        }
+        return plan;
+    }
+
+    public void testBehavesAsAQueue() {
+        TourPlan plan = plan(lineMap(0, 1, 2, 3), 2, 0, 3);
+        assertEquals(3, plan.size());
+        assertEquals(2, plan.peek());
+        assertTrue(plan.contains(0));
+        assertFalse(plan.contains(1));
+        assertEquals(2, plan.remove());
+        assertTrue(Arrays.equals(new int[]{0, 3}, plan.toArray()));
+        plan.clear();
+        assertTrue(plan.isEmpty());
+        assertEquals(-1, plan.peek());
+        plan.add(0);
+        assertEquals(0, plan.peek());
+    }
+
+    public void testRepairRemovesEmptiedStations() {
+        GameStateMap map = lineMap(0, 10, 20, 30, 40);
+        TourPlan plan = plan(map, 0, 1, 2, 3, 4);
+        assertFalse(plan.repair());
+        map.updateStation(2, 0, 0);
+        map.updateStation(4, 0, 0);
+        assertFalse(plan.repair());
+        assertTrue(Arrays.equals(new int[]{0, 1, 3}, plan.toArray()));
+        assertEquals(2, plan.removed);
+        assertEquals(0, plan.improvements);
+
+        //the head is removed too, and a station which is not in the plan is ignored
+        map.updateStation(0, 0, 0);
+        map.updateStation(2, 0, 0);
+        assertTrue(plan.repair());
+        assertEquals(1, plan.peek());
+        assertEquals(3, plan.removed);
+    }
+
+    public void testRepairReordersTheLegsAfterARemovedStation() {
+        //the plan only went from 4 back to 2 and 1 because 4 was on the way
+        GameStateMap map = lineMap(0, 10, 20, 30, 25);
+        TourPlan plan = plan(map, 0, 4, 2, 1, 3);
+        map.updateStation(4, 0, 0);
+        assertFalse(plan.repair());
+        assertTrue(Arrays.equals(new int[]{0, 1, 2, 3}, plan.toArray()));
+        assertEquals(1, plan.improvements);
+    }
+}
@@ -0,0 +1,64 @@
+package uk.ac.ed.inf.powergrab;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class TourPlannerTest extends TestCase {
+    private static final double START_LATITUDE = 55.9436;
+    private static final double START_LONGITUDE = -3.1920;
+
+    private static int[] greedyTour(GameStateMap map) {
+        int[] tour = new int[map.stations.size];
+        boolean[] planned = new boolean[map.stations.size];
+        double lat = START_LATITUDE;
+        double lon = START_LONGITUDE;
+        for(int k = 0; k < tour.length; k++) {
+            tour[k] = map.grid.nearest(lat, lon, StationTable.LIGHTHOUSE, planned);
+            planned[tour[k]] = true;
+            lat = map.stations.latitude[tour[k]];
+            lon = map.stations.longitude[tour[k]];
+        }
+        return tour;
+    }
+
+    private static void assertSameStations(int[] expected, int[] actual) {
+        int[] a = expected.clone();
+        int[] b = actual.clone();
+        Arrays.sort(a);
+        Arrays.sort(b);
+        assertTrue(Arrays.equals(a, b));
+    }
+
+    public void testNeverWorseThanGreedyTour() {
+        GameStateMap map = TestMaps.randomMap(300, 300, false, 100);
+        int[] greedy = greedyTour(map);
+        TourPlanner planner = new TourPlanner(2_000_000_000L);
+        int[] planned = planner.improve(map, START_LATITUDE, START_LONGITUDE, greedy);
+        assertSameStations(greedy, planned);
+        assertTrue(planner.plannedCoins > planner.initialCoins
+                || (planner.plannedCoins == planner.initialCoins && planner.plannedMoves <= planner.initialMoves));
+        assertTrue(planner.improvements > 0);
+    }
+
+    public void testOrdersStationsOnALine() {
+        StationTable.Builder builder = new StationTable.Builder();
+        for(int k = 1; k <= 5; k++) {
+            builder.add("s" + k, START_LATITUDE, START_LONGITUDE + 0.001 * k, 10, 10, StationTable.LIGHTHOUSE, "#00ff00");
+        }
+        GameStateMap map = new GameStateMap(builder.build(), null);
+        TourPlanner planner = new TourPlanner(2_000_000_000L);
+        int[] planned = planner.improve(map, START_LATITUDE, START_LONGITUDE, new int[]{3, 0, 4, 1, 2});
+        assertTrue(Arrays.toString(planned), Arrays.equals(new int[]{0, 1, 2, 3, 4}, planned));
+        assertFalse(planner.timedOut);
+        assertEquals(5 * StationMatrix.moves(0, 0.001), planner.plannedMoves);
+    }
+
+    public void testReturnsTourWhenBudgetRunsOut() {
+        GameStateMap map = TestMaps.randomMap(500, 500, false, 100);
+        int[] greedy = greedyTour(map);
+        TourPlanner planner = new TourPlanner(0);
+        assertSameStations(greedy, planner.improve(map, START_LATITUDE, START_LONGITUDE, greedy));
+        assertTrue(planner.timedOut);
+    }
+}